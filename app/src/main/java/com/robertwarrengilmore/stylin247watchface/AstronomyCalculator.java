@@ -73,19 +73,15 @@ class AstronomyCalculator {
 
   /**
    * Calculates the approximate civil time in the given time zone of astronomical noon in the given
-   * location on a given date.
+   * location on a given date. The zone offset comes from the {@link TimeSource}, which caches it
+   * until the next transition, so this is plain arithmetic.
    * <p>
    * The time zone is not derived from the location because the user may use a time zone different
    * to that of his location. (For example, residents of Fort Pierre, South Dakota customarily use
    * the time zone of Pierre, rather than the one in which Fort Pierre is technically located.)
    */
-  static LocalTime getSolarNoon(Location location, Calendar when) {
-    final long timeZoneOffsetSeconds = when
-        .getTimeZone()
-        .toZoneId()
-        .getRules()
-        .getOffset(when.toInstant())
-        .getTotalSeconds();
+  static LocalTime getSolarNoon(Location location, TimeSource.Time when) {
+    final long timeZoneOffsetSeconds = when.getZoneOffsetSeconds();
     final long astronomicalTimeOffsetSeconds = (long) (
         location.getLongitude() / 360 * 24 * 60 * 60
     );
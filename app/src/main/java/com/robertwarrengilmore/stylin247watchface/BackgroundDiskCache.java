@@ -0,0 +1,248 @@
+package com.robertwarrengilmore.stylin247watchface;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+
+import lombok.Value;
+
+/**
+ * Rasterised backgrounds, saved as raw pixels in the app's cache directory, so that the first frame
+ * after the process has been killed needn't draw the background from scratch.
+ * <p>
+ * Files are memory-mapped to load them, so the pixels go straight from the page cache into the
+ * bitmap, without passing through a buffer on the heap. Each file starts with a header that
+ * repeats its key and holds a checksum of the pixels, so that a corrupt or mismatched file is
+ * detected and deleted rather than drawn. Files are evicted once they're more than a couple of days
+ * old, or when together they grow past a budget.
+ */
+class BackgroundDiskCache {
+
+  private static final String TAG = "BackgroundDiskCache";
+
+  private static final String DIRECTORY_NAME = "backgrounds";
+  private static final String FILE_SUFFIX = ".px";
+  private static final String TEMPORARY_FILE_SUFFIX = ".tmp";
+  private static final int FILE_MAGIC = 0x53424731;
+  private static final int FILE_VERSION = 2;
+
+  private static final long MAXIMUM_TOTAL_BYTE_COUNT = 8L * 1024 * 1024;
+  private static final long MAXIMUM_AGE_MILLIS = Duration.ofDays(2).toMillis();
+
+  private static final Executor WRITE_EXECUTOR = Executors.newSingleThreadExecutor();
+
+  /**
+   * Identifies a background by everything that it depends on, and nothing else. The whole key is
+   * saved in the file's header and compared when the file is loaded, so two keys that share a file
+   * name never load each other's backgrounds.
+   */
+  @Value
+  static class Key {
+
+    /**
+     * See {@link Palette#getSpriteKey}.
+     */
+    String paletteKey;
+    int size;
+    long epochDay;
+    boolean roundFace;
+    boolean drawRealisticSun;
+    boolean showHourNumbers;
+    boolean angleHourNumbers;
+    boolean showSingleMinuteTicks;
+    @Nullable
+    Double latitude;
+    @Nullable
+    Double longitude;
+    int zoneOffsetSeconds;
+    int moonPhaseIndex;
+
+    private String getFileName() {
+      return paletteKey.replaceAll("[^A-Za-z0-9]", "_") + "-" + size + "-" + epochDay + "-" +
+          getDigest() + FILE_SUFFIX;
+    }
+
+    private String getDigest() {
+      final byte[] digest;
+      try {
+        digest = MessageDigest
+            .getInstance("SHA-256")
+            .digest(toString().getBytes(StandardCharsets.UTF_8));
+      } catch (NoSuchAlgorithmException e) {
+        // Every Android platform has SHA-256.
+        throw new IllegalStateException(e);
+      }
+      final StringBuilder builder = new StringBuilder(2 * digest.length);
+      for (byte digestByte : digest) {
+        builder.append(String.format("%02x", digestByte));
+      }
+      return builder.toString();
+    }
+  }
+
+  private final File directory;
+
+  BackgroundDiskCache(Context context) {
+    directory = new File(context.getCacheDir(), DIRECTORY_NAME);
+  }
+
+  /**
+   * Loads the background with the given key, or returns null if there's no such background or its
+   * file is unusable.
+   */
+  @Nullable
+  Bitmap load(Key key) {
+    final File file = new File(directory, key.getFileName());
+    if (!file.exists()) {
+      return null;
+    }
+    try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        FileChannel channel = randomAccessFile.getChannel()) {
+      final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      final Bitmap bitmap = readBitmap(buffer, key);
+      if (bitmap == null) {
+        Log.w(TAG, "Deleting the corrupt or mismatched background file " + file.getName() + ".");
+        file.delete();
+        return null;
+      }
+      // This keeps the background from being evicted as the oldest.
+      file.setLastModified(System.currentTimeMillis());
+      return bitmap;
+    } catch (IOException | RuntimeException e) {
+      Log.w(TAG, "Could not read the background file " + file.getName() + ".", e);
+      file.delete();
+      return null;
+    }
+  }
+
+  @Nullable
+  private static Bitmap readBitmap(ByteBuffer buffer, Key key) {
+    if (buffer.remaining() < 4 * Integer.BYTES || buffer.getInt() != FILE_MAGIC ||
+        buffer.getInt() != FILE_VERSION) {
+      return null;
+    }
+    final int width = buffer.getInt();
+    final int height = buffer.getInt();
+    if (width != key.getSize() || height != key.getSize()) {
+      return null;
+    }
+    final byte[] expectedKey = key.toString().getBytes(StandardCharsets.UTF_8);
+    if (buffer.remaining() < Integer.BYTES || buffer.getInt() != expectedKey.length ||
+        buffer.remaining() < expectedKey.length) {
+      return null;
+    }
+    final byte[] actualKey = new byte[expectedKey.length];
+    buffer.get(actualKey);
+    final long pixelByteCount = 4L * width * height;
+    if (!Arrays.equals(actualKey, expectedKey) ||
+        buffer.remaining() != Long.BYTES + pixelByteCount) {
+      return null;
+    }
+    final long expectedChecksum = buffer.getLong();
+    final ByteBuffer pixels = buffer.slice();
+    final CRC32 checksum = new CRC32();
+    checksum.update(pixels.duplicate());
+    if (checksum.getValue() != expectedChecksum) {
+      return null;
+    }
+    final Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+    bitmap.copyPixelsFromBuffer(pixels);
+    return bitmap;
+  }
+
+  /**
+   * Saves the given software bitmap under the given key. The pixels are copied straight away, so
+   * the bitmap may be recycled as soon as this returns. They're written on a background thread.
+   */
+  void save(Key key, Bitmap bitmap) {
+    final byte[] keyBytes = key.toString().getBytes(StandardCharsets.UTF_8);
+    final int pixelByteCount = bitmap.getByteCount();
+    final ByteBuffer buffer = ByteBuffer.allocate(5 * Integer.BYTES + keyBytes.length +
+        Long.BYTES + pixelByteCount);
+    buffer.putInt(FILE_MAGIC);
+    buffer.putInt(FILE_VERSION);
+    buffer.putInt(bitmap.getWidth());
+    buffer.putInt(bitmap.getHeight());
+    buffer.putInt(keyBytes.length);
+    buffer.put(keyBytes);
+    final int checksumPosition = buffer.position();
+    buffer.position(checksumPosition + Long.BYTES);
+    bitmap.copyPixelsToBuffer(buffer);
+    WRITE_EXECUTOR.execute(() -> {
+      final CRC32 checksum = new CRC32();
+      checksum.update(buffer.array(), checksumPosition + Long.BYTES, pixelByteCount);
+      buffer.putLong(checksumPosition, checksum.getValue());
+      write(key.getFileName(), buffer.array());
+      evict();
+    });
+  }
+
+  private void write(String fileName, byte[] bytes) {
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      Log.w(TAG, "Could not create the background cache directory.");
+      return;
+    }
+    // Write to a temporary file first, so that a half-written file is never read.
+    final File temporaryFile = new File(directory, fileName + TEMPORARY_FILE_SUFFIX);
+    try (FileOutputStream outputStream = new FileOutputStream(temporaryFile)) {
+      outputStream.write(bytes);
+    } catch (IOException e) {
+      Log.w(TAG, "Could not write the background file " + fileName + ".", e);
+      temporaryFile.delete();
+      return;
+    }
+    if (!temporaryFile.renameTo(new File(directory, fileName))) {
+      Log.w(TAG, "Could not rename the background file " + fileName + ".");
+      temporaryFile.delete();
+    }
+  }
+
+  /**
+   * Deletes the files that are too old, and then the least recently used files until the rest fit
+   * within the budget.
+   */
+  private void evict() {
+    final File[] files = directory.listFiles((file) -> file.getName().endsWith(FILE_SUFFIX));
+    if (files == null) {
+      return;
+    }
+    final long nowMillis = System.currentTimeMillis();
+    final List<File> keptFiles = new ArrayList<>();
+    for (File file : files) {
+      if (nowMillis - file.lastModified() > MAXIMUM_AGE_MILLIS) {
+        file.delete();
+      } else {
+        keptFiles.add(file);
+      }
+    }
+    keptFiles.sort(Comparator.comparingLong(File::lastModified).reversed());
+    long totalByteCount = 0;
+    for (File file : keptFiles) {
+      totalByteCount += file.length();
+      if (totalByteCount > MAXIMUM_TOTAL_BYTE_COUNT) {
+        file.delete();
+      }
+    }
+  }
+}
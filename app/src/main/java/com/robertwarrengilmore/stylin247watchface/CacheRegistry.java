@@ -0,0 +1,229 @@
+package com.robertwarrengilmore.stylin247watchface;
+
+import android.content.ComponentCallbacks2;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps account of the memory held by the watch face's render caches, and evicts caches when their
+ * total size exceeds a budget.
+ * <p>
+ * Each cache is registered under a name with its size in bytes, a priority, and a callback that
+ * drops it. When the budget is exceeded, caches are evicted in order of priority (lowest first)
+ * and, within a priority, least recently registered first. The owner of an evicted cache is
+ * expected to rebuild it lazily the next time it is needed.
+ */
+class CacheRegistry {
+
+  private static final String TAG = "CacheRegistry";
+
+  /**
+   * Caches that only speed up rebuilding some other cache, e.g., recordings and sprites.
+   */
+  static final int PRIORITY_SPARE = 0;
+  /**
+   * Caches for modes that aren't on the screen right now, e.g., the ambient palette while the face
+   * is interactive.
+   */
+  static final int PRIORITY_INACTIVE = 1;
+  /**
+   * Caches that are needed to draw the next frame.
+   */
+  static final int PRIORITY_ACTIVE = 2;
+
+  private static class Entry {
+
+    private final Runnable evictor;
+    private int priority;
+    private long byteCount;
+
+    private Entry(int priority, long byteCount, Runnable evictor) {
+      this.priority = priority;
+      this.byteCount = byteCount;
+      this.evictor = evictor;
+    }
+  }
+
+  private final Map<String, Entry> entries = new LinkedHashMap<>();
+  private long budgetByteCount;
+  private long currentByteCount = 0;
+  private long peakByteCount = 0;
+
+  CacheRegistry(long budgetByteCount) {
+    this.budgetByteCount = budgetByteCount;
+  }
+
+  /**
+   * Registers a cache, or replaces the registration of an existing cache with the same name. Other
+   * caches may be evicted to make room for it.
+   */
+  void put(String name, int priority, long byteCount, Runnable evictor) {
+    final List<Runnable> evictors;
+    synchronized (this) {
+      final Entry previous = entries.remove(name);
+      if (previous != null) {
+        currentByteCount -= previous.byteCount;
+      }
+      entries.put(name, new Entry(priority, byteCount, evictor));
+      currentByteCount += byteCount;
+      updatePeak(currentByteCount);
+      evictors = removeOverBudget(name);
+    }
+    runEvictors(evictors);
+  }
+
+  /**
+   * Forgets a cache that its owner has dropped. Nothing happens if the cache isn't registered.
+   */
+  synchronized void remove(String name) {
+    final Entry entry = entries.remove(name);
+    if (entry != null) {
+      currentByteCount -= entry.byteCount;
+    }
+  }
+
+  synchronized void setPriority(String name, int priority) {
+    final Entry entry = entries.get(name);
+    if (entry != null) {
+      entry.priority = priority;
+    }
+  }
+
+  /**
+   * Records memory that is allocated only while a cache is being built, e.g., layers and the
+   * software copy of a hardware bitmap. It only counts towards the peak usage.
+   */
+  synchronized void recordTransient(long byteCount) {
+    updatePeak(currentByteCount + byteCount);
+  }
+
+  /**
+   * Evicts every cache whose priority is lower than the given priority.
+   */
+  void evictBelow(int priority) {
+    final List<Runnable> evictors = new ArrayList<>();
+    synchronized (this) {
+      final Iterator<Entry> iterator = entries.values().iterator();
+      while (iterator.hasNext()) {
+        final Entry entry = iterator.next();
+        if (entry.priority < priority) {
+          iterator.remove();
+          currentByteCount -= entry.byteCount;
+          evictors.add(entry.evictor);
+        }
+      }
+    }
+    runEvictors(evictors);
+  }
+
+  /**
+   * Evicts caches according to how much memory the system needs back. See
+   * {@link #getTrimPriority(int)}.
+   */
+  void trimMemory(int level) {
+    evictBelow(getTrimPriority(level));
+  }
+
+  /**
+   * Evicts every cache, e.g., because the system is running low on memory.
+   */
+  void evictAll() {
+    evictBelow(Integer.MAX_VALUE);
+  }
+
+  /**
+   * Works out which caches to evict for a given {@link ComponentCallbacks2} trim level. Caches with
+   * a priority lower than the result should be evicted.
+   * <ul>
+   *   <li>When memory is getting low, only spare caches are evicted.</li>
+   *   <li>When memory is low, or our process is in the background LRU list, the caches for modes
+   *   that aren't on the screen are evicted too.</li>
+   *   <li>When memory is critically low, or our process is next in line to be killed, everything
+   *   is evicted, including the active background.</li>
+   * </ul>
+   */
+  static int getTrimPriority(int level) {
+    if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE ||
+        level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+      return Integer.MAX_VALUE;
+    }
+    if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+      return PRIORITY_ACTIVE;
+    }
+    if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE) {
+      return PRIORITY_INACTIVE;
+    }
+    return PRIORITY_SPARE;
+  }
+
+  synchronized void setBudgetByteCount(long budgetByteCount) {
+    this.budgetByteCount = budgetByteCount;
+  }
+
+  synchronized long getBudgetByteCount() {
+    return budgetByteCount;
+  }
+
+  synchronized long getCurrentByteCount() {
+    return currentByteCount;
+  }
+
+  synchronized long getPeakByteCount() {
+    return peakByteCount;
+  }
+
+  /**
+   * Removes the entries that should be evicted to bring the total within the budget, and returns
+   * their evictors. The named entry is spared, because it has only just been put.
+   */
+  private List<Runnable> removeOverBudget(String spared) {
+    final List<Runnable> evictors = new ArrayList<>();
+    while (currentByteCount > budgetByteCount) {
+      String victimName = null;
+      Entry victim = null;
+      for (Map.Entry<String, Entry> candidate : entries.entrySet()) {
+        if (candidate.getKey().equals(spared)) {
+          continue;
+        }
+        if (victim == null || candidate.getValue().priority < victim.priority) {
+          victimName = candidate.getKey();
+          victim = candidate.getValue();
+        }
+      }
+      if (victim == null) {
+        Log.w(TAG,
+            "Cache " + spared + " alone exceeds the budget of " + budgetByteCount + " bytes."
+        );
+        break;
+      }
+      entries.remove(victimName);
+      currentByteCount -= victim.byteCount;
+      evictors.add(victim.evictor);
+    }
+    return evictors;
+  }
+
+  private void updatePeak(long byteCount) {
+    if (byteCount <= peakByteCount) {
+      return;
+    }
+    peakByteCount = byteCount;
+    if (BuildConfig.DEBUG) {
+      Log.d(TAG, "Peak cache usage: " + peakByteCount + " of " + budgetByteCount + " bytes.");
+    }
+  }
+
+  /**
+   * Evictors are run outside the lock, so that they may call back into the registry.
+   */
+  private static void runEvictors(List<Runnable> evictors) {
+    for (Runnable evictor : evictors) {
+      evictor.run();
+    }
+  }
+}
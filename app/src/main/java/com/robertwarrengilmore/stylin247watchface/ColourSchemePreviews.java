@@ -0,0 +1,120 @@
+package com.robertwarrengilmore.stylin247watchface;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.location.Location;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.LruCache;
+
+import androidx.annotation.Nullable;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+import lombok.Value;
+
+/**
+ * Thumbnails of the face in each colour scheme, for the settings. They're rendered by
+ * {@link FrameRenderer} on a background thread, so that the settings never wait for them, and
+ * cached for the life of the process by scheme, options, day, place and time zone. A custom scheme
+ * is cached by its colours too, so that editing it renders it afresh.
+ * <p>
+ * Each thumbnail shows noon, when both the day sector and the sun are in view.
+ */
+class ColourSchemePreviews {
+
+  /**
+   * Receives a thumbnail on the main thread once it's ready.
+   */
+  interface Listener {
+
+    void onPreviewReady(String colourScheme, Bitmap preview);
+  }
+
+  @Value
+  private static class Key {
+
+    String colourScheme;
+    @Nullable
+    CustomColourScheme customColourScheme;
+    FaceOptions options;
+    LocalDate day;
+    /* Rounded to whole degrees, since a smaller move barely shifts the sectors of a thumbnail. */
+    @Nullable
+    Long latitude;
+    @Nullable
+    Long longitude;
+    int zoneOffsetSeconds;
+    int size;
+  }
+
+  /* Enough for every scheme, under a few combinations of options. */
+  private static final int CACHE_SIZE = 8;
+  private static final LruCache<Key, Bitmap> CACHE = new LruCache<>(CACHE_SIZE);
+  private static final Executor EXECUTOR = Executors.newSingleThreadExecutor();
+
+  private final Context context;
+  private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+  ColourSchemePreviews(Context context) {
+    this.context = context.getApplicationContext();
+  }
+
+  /**
+   * Hands the thumbnail of the given scheme to the listener: straight away if it's cached, or
+   * otherwise once it has been rendered.
+   */
+  void request(
+      String colourScheme,
+      Map<String, CustomColourScheme> customColourSchemes,
+      FaceOptions options,
+      @Nullable Location location,
+      int size,
+      Listener listener
+  ) {
+    final ZoneId zone = ZoneId.systemDefault();
+    final ZonedDateTime noon = LocalDate.now(zone).atTime(LocalTime.NOON).atZone(zone);
+    final Key key = new Key(colourScheme,
+        customColourSchemes.get(colourScheme),
+        options,
+        noon.toLocalDate(),
+        location == null ? null : Math.round(location.getLatitude()),
+        location == null ? null : Math.round(location.getLongitude()),
+        noon.getOffset().getTotalSeconds(),
+        size
+    );
+    final Bitmap cached = CACHE.get(key);
+    if (cached != null) {
+      listener.onPreviewReady(colourScheme, cached);
+      return;
+    }
+    EXECUTOR.execute(() -> {
+      // An earlier request for the same thumbnail may have rendered it in the meantime.
+      Bitmap preview = CACHE.get(key);
+      if (preview == null) {
+        preview = FrameRenderer.render(context,
+            noon.toInstant(),
+            TimeZone.getTimeZone(zone),
+            location,
+            size,
+            (paletteContext, faceRadius) -> Palette.getColourSchemePalette(paletteContext,
+                faceRadius,
+                colourScheme,
+                customColourSchemes
+            ),
+            options
+        );
+        CACHE.put(key, preview);
+      }
+      final Bitmap rendered = preview;
+      mainHandler.post(() -> listener.onPreviewReady(colourScheme, rendered));
+    });
+  }
+}
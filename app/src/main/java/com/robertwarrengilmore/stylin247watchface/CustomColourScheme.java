@@ -0,0 +1,216 @@
+package com.robertwarrengilmore.stylin247watchface;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.graphics.Color;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import lombok.Value;
+
+/**
+ * A colour scheme of the user's own, with a colour for each part of the face. It's compiled into a
+ * palette by {@link Palette#getCustomPalette}. The settings let the user edit one such scheme by
+ * picking each colour from the {@link #SWATCHES}.
+ * <p>
+ * Each colour is packed into an int as its hue in degrees and its saturation and value in percent,
+ * and the schemes are stored together in one string setting, one line for each: the id, the six
+ * colours in hexadecimal, and then the name.
+ */
+@Value
+class CustomColourScheme {
+
+  private static final String TAG = "CustomColourScheme";
+
+  /**
+   * Prefixes the id of a custom scheme to make its value for the colour scheme setting.
+   */
+  static final String VALUE_PREFIX = "colour_scheme_custom_";
+  /**
+   * The id of the scheme that the settings edit.
+   */
+  static final String EDITABLE_SCHEME_ID = "mine";
+
+  private static final String SCHEME_SEPARATOR = "\n";
+  private static final String FIELD_SEPARATOR = ";";
+  private static final int COLOUR_COUNT = 6;
+
+  /**
+   * The colours that the settings offer, named in the same order by
+   * {@code R.array.custom_colour_names}.
+   */
+  static final int[] SWATCHES = {
+      packHsv(0, 0, 0),
+      packHsv(0, 0, 0.5f),
+      packHsv(0, 0, 1),
+      packHsv(0, 0.75f, 0.85f),
+      packHsv(30, 0.8f, 1),
+      packHsv(45, 0.5f, 1),
+      packHsv(120, 0.6f, 0.7f),
+      packHsv(170, 0.8f, 0.6f),
+      packHsv(185, 1, 1),
+      packHsv(217, 0.9f, 0.5f),
+      packHsv(275, 0.6f, 0.6f),
+      packHsv(330, 0.5f, 1),
+  };
+
+  String id;
+  String name;
+  int daySectorHsv;
+  int nightSectorHsv;
+  int sunHsv;
+  int moonHsv;
+  int handsHsv;
+  int ticksHsv;
+
+  /**
+   * Packs a colour into an int.
+   *
+   * @param hue
+   *     in degrees, from 0 to 360
+   * @param saturation
+   *     from 0 to 1
+   * @param value
+   *     from 0 to 1
+   */
+  static int packHsv(float hue, float saturation, float value) {
+    final int hueDegrees = Math.floorMod(Math.round(hue), 360);
+    final int saturationPercent = Math.max(0, Math.min(100, Math.round(saturation * 100)));
+    final int valuePercent = Math.max(0, Math.min(100, Math.round(value * 100)));
+    return hueDegrees << 14 | saturationPercent << 7 | valuePercent;
+  }
+
+  /**
+   * Unpacks a colour packed by {@link #packHsv} into an opaque colour int.
+   */
+  static int toColour(int packedHsv) {
+    return Color.HSVToColor(new float[]{
+        (packedHsv >> 14) & 0x1FF, ((packedHsv >> 7) & 0x7F) / 100f, (packedHsv & 0x7F) / 100f
+    });
+  }
+
+  /**
+   * Creates a scheme with the colours of the vivid palette, as a starting point for editing.
+   */
+  static CustomColourScheme createDefault(String id, String name) {
+    // Cyan, blue, yellow, white, black and black.
+    return fromColours(id, name, new int[]{
+        SWATCHES[8], SWATCHES[9], SWATCHES[5], SWATCHES[2], SWATCHES[0], SWATCHES[0],
+    });
+  }
+
+  /**
+   * Creates a scheme from its colours, in the order of {@link #getColours}.
+   */
+  static CustomColourScheme fromColours(String id, String name, int[] colours) {
+    return new CustomColourScheme(id,
+        name,
+        colours[0],
+        colours[1],
+        colours[2],
+        colours[3],
+        colours[4],
+        colours[5]
+    );
+  }
+
+  /**
+   * Returns the colours: the day sector, the night sector, the sun, the moon, the hands and the
+   * ticks.
+   */
+  int[] getColours() {
+    return new int[]{daySectorHsv, nightSectorHsv, sunHsv, moonHsv, handsHsv, ticksHsv};
+  }
+
+  /**
+   * Returns this scheme's value for the colour scheme setting.
+   */
+  String getValue() {
+    return VALUE_PREFIX + id;
+  }
+
+  /**
+   * Returns a string that's the same for any two schemes with the same colours, whatever their ids
+   * and names.
+   */
+  String getColourKey() {
+    return encodeColours(",");
+  }
+
+  private String encodeColours(String separator) {
+    final StringBuilder builder = new StringBuilder();
+    for (int hsv : getColours()) {
+      if (builder.length() > 0) {
+        builder.append(separator);
+      }
+      builder.append(Integer.toHexString(hsv));
+    }
+    return builder.toString();
+  }
+
+  private String encode() {
+    // The name goes last, so that it may contain the separator.
+    return id + FIELD_SEPARATOR + encodeColours(FIELD_SEPARATOR) + FIELD_SEPARATOR +
+        name.replace(SCHEME_SEPARATOR, " ");
+  }
+
+  private static CustomColourScheme decode(String encoded) {
+    final String[] fields = encoded.split(FIELD_SEPARATOR, COLOUR_COUNT + 2);
+    if (fields.length != COLOUR_COUNT + 2 || fields[0].isEmpty()) {
+      throw new IllegalArgumentException(
+          "Expected an id, " + COLOUR_COUNT + " colours and a name.");
+    }
+    final int[] colours = new int[COLOUR_COUNT];
+    for (int i = 0; i < COLOUR_COUNT; i++) {
+      colours[i] = Integer.parseInt(fields[i + 1], 16);
+    }
+    return fromColours(fields[0], fields[COLOUR_COUNT + 1], colours);
+  }
+
+  /**
+   * Reads the saved schemes, keyed by their values for the colour scheme setting, in the order in
+   * which they were saved. A line that can't be read is skipped.
+   */
+  static Map<String, CustomColourScheme> loadAll(Context context, SharedPreferences preferences) {
+    final String encoded = preferences.getString(
+        context.getString(R.string.settings_key_custom_colour_schemes),
+        ""
+    );
+    if (encoded.isEmpty()) {
+      return Collections.emptyMap();
+    }
+    final Map<String, CustomColourScheme> schemes = new LinkedHashMap<>();
+    for (String line : encoded.split(SCHEME_SEPARATOR)) {
+      try {
+        final CustomColourScheme scheme = decode(line);
+        schemes.put(scheme.getValue(), scheme);
+      } catch (IllegalArgumentException e) {
+        Log.w(TAG, "Skipping an unreadable custom colour scheme.", e);
+      }
+    }
+    return Collections.unmodifiableMap(schemes);
+  }
+
+  /**
+   * Saves the given schemes in place of those saved before.
+   */
+  static void saveAll(
+      Context context, SharedPreferences preferences, List<CustomColourScheme> schemes
+  ) {
+    final List<String> lines = new ArrayList<>();
+    for (CustomColourScheme scheme : schemes) {
+      lines.add(scheme.encode());
+    }
+    preferences
+        .edit()
+        .putString(context.getString(R.string.settings_key_custom_colour_schemes),
+            String.join(SCHEME_SEPARATOR, lines)
+        )
+        .apply();
+  }
+}
@@ -0,0 +1,55 @@
+package com.robertwarrengilmore.stylin247watchface;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * The user's choices about what to show on the face, as the painter needs them for one frame.
+ */
+@Value
+@Builder(toBuilder = true)
+class FaceOptions {
+
+  boolean drawRealisticSun;
+  boolean showHourNumbers;
+  boolean angleHourNumbers;
+  boolean showSingleMinuteTicks;
+  boolean showSecondHand;
+  boolean animateSecondHandSmoothly;
+
+  /**
+   * Reads the options from the user's settings.
+   */
+  static FaceOptions fromPreferences(Context context, SharedPreferences preferences) {
+    final boolean showSecondHand = preferences.getBoolean(
+        context.getString(R.string.settings_key_show_second_hand),
+        false
+    );
+    return builder()
+        .drawRealisticSun(preferences.getBoolean(
+            context.getString(R.string.settings_key_draw_realistic_sun),
+            false
+        ))
+        .showHourNumbers(preferences.getBoolean(
+            context.getString(R.string.settings_key_show_hour_numbers),
+            true
+        ))
+        .angleHourNumbers(preferences.getBoolean(
+            context.getString(R.string.settings_key_angle_hour_numbers),
+            false
+        ))
+        .showSingleMinuteTicks(preferences.getBoolean(
+            context.getString(R.string.settings_key_show_single_minute_ticks),
+            false
+        ))
+        .showSecondHand(showSecondHand)
+        .animateSecondHandSmoothly(showSecondHand && preferences.getBoolean(
+            context.getString(R.string.settings_key_animate_second_hand_smoothly),
+            false
+        ))
+        .build();
+  }
+}
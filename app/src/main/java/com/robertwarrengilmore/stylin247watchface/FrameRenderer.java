@@ -0,0 +1,108 @@
+package com.robertwarrengilmore.stylin247watchface;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Point;
+import android.graphics.Rect;
+import android.location.Location;
+
+import androidx.annotation.Nullable;
+
+import java.time.Instant;
+import java.util.Calendar;
+import java.util.TimeZone;
+
+/**
+ * Renders single frames of the watch face into bitmaps, without a watch face service, a surface or
+ * an emulator. The settings use it for their previews, and the tests run it under Robolectric's
+ * native graphics mode.
+ * <p>
+ * Each frame is drawn by a fresh {@link Painter}, so that no cached state leaks between frames.
+ */
+class FrameRenderer {
+
+  /**
+   * Creates a palette for a face of the given radius, e.g., {@code Palette::getMutedPalette}.
+   */
+  interface PaletteFactory {
+
+    Palette create(Context context, float faceRadius);
+  }
+
+  private static final Point NO_SHIFT = new Point(0, 0);
+
+  /**
+   * Renders the face as it would appear at the given instant in the given time zone.
+   *
+   * @param location
+   *     the place whose sunrise and sunset to show, or null to show a 12-hour day
+   * @param size
+   *     the width and height of the square surface in pixels
+   */
+  static Bitmap render(
+      Context context,
+      Instant when,
+      TimeZone timeZone,
+      @Nullable Location location,
+      int size,
+      PaletteFactory paletteFactory,
+      FaceOptions options
+  ) {
+    final Palette palette = paletteFactory.create(context, size / 2f);
+
+    final Bitmap frame = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+    final Painter painter = new Painter(new CacheRegistry(Long.MAX_VALUE));
+    draw(painter,
+        new Canvas(frame),
+        size,
+        palette,
+        when.toEpochMilli(),
+        Calendar.getInstance(timeZone),
+        new TimeSource(timeZone),
+        new TimeSource.Time(),
+        location,
+        options
+    );
+    return frame;
+  }
+
+  /**
+   * Draws one frame from scratch onto a square canvas, reusing the given painter, calendar and time
+   * source, which must all be in the same time zone.
+   */
+  static void draw(
+      Painter painter,
+      Canvas canvas,
+      int size,
+      Palette palette,
+      long epochMillis,
+      Calendar calendar,
+      TimeSource timeSource,
+      TimeSource.Time time,
+      @Nullable Location location,
+      FaceOptions options
+  ) {
+    timeSource.getTime(epochMillis, time);
+    painter.invalidateCachedBackground();
+    painter.draw(canvas,
+        new Rect(0, 0, size, size),
+        palette,
+        calendar,
+        time,
+        location,
+        options,
+        NO_SHIFT
+    );
+  }
+
+  /**
+   * Creates a location for the given coordinates, as the watch face does from its saved settings.
+   */
+  static Location getLocation(double latitude, double longitude) {
+    final Location location = new Location("");
+    location.setLatitude(latitude);
+    location.setLongitude(longitude);
+    return location;
+  }
+}
@@ -0,0 +1,83 @@
+package com.robertwarrengilmore.stylin247watchface;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.PointF;
+
+/**
+ * Pre-drawn images of the moon for one palette and radius, one for each of
+ * {@link #PHASE_COUNT} evenly spaced phases. The moon changes too slowly for the difference between
+ * neighbouring steps to be visible. Each image is drawn the first time its phase is needed.
+ * <p>
+ * Like {@link SunSprites}, an atlas is shared by every engine, and each image is immutable once
+ * it's drawn.
+ */
+class MoonSpriteAtlas {
+
+  static final int PHASE_COUNT = 32;
+
+  private final float radius;
+  private final Paint litPaint;
+  private final Paint darkPaint;
+  private final Paint linePaint;
+  private final Bitmap[] sprites = new Bitmap[PHASE_COUNT];
+  private final int spriteSize;
+  private long byteCount = 0;
+
+  MoonSpriteAtlas(Palette palette, float radius) {
+    this.radius = radius;
+    litPaint = Sprites.withoutXfermode(palette.getMoonLitPaint());
+    darkPaint = Sprites.withoutXfermode(palette.getMoonDarkPaint());
+    linePaint = Sprites.withoutXfermode(palette.getMoonLinePaint());
+    // Leave room for the half of the outline that lies outside the radius.
+    spriteSize = (int) Math.ceil(2 * (radius + linePaint.getStrokeWidth() / 2 + 1));
+  }
+
+  /**
+   * Returns how much memory the sprites drawn so far occupy.
+   */
+  synchronized long getByteCount() {
+    return byteCount;
+  }
+
+  /**
+   * Draws the moon centred on the given point, in the phase nearest the given one, compositing it
+   * with the given paint.
+   */
+  void draw(Canvas canvas, PointF centre, float phase, Paint spritePaint) {
+    canvas.drawBitmap(getSprite(getPhaseIndex(phase)),
+        centre.x - spriteSize / 2f,
+        centre.y - spriteSize / 2f,
+        spritePaint
+    );
+  }
+
+  /**
+   * Returns the index of the drawn phase nearest the given one.
+   */
+  static int getPhaseIndex(float phase) {
+    return Math.round(phase * PHASE_COUNT) % PHASE_COUNT;
+  }
+
+  private synchronized Bitmap getSprite(int phaseIndex) {
+    if (sprites[phaseIndex] == null) {
+      sprites[phaseIndex] = createSprite((float) phaseIndex / PHASE_COUNT);
+      byteCount += sprites[phaseIndex].getAllocationByteCount();
+    }
+    return sprites[phaseIndex];
+  }
+
+  private Bitmap createSprite(float phase) {
+    final Bitmap sprite = Bitmap.createBitmap(spriteSize, spriteSize, Bitmap.Config.ARGB_8888);
+    Painter.drawMoon(new Canvas(sprite),
+        new PointF(spriteSize / 2f, spriteSize / 2f),
+        radius,
+        phase,
+        litPaint,
+        darkPaint,
+        linePaint
+    );
+    return Sprites.toImmutable(sprite);
+  }
+}
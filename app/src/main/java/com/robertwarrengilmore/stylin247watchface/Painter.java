@@ -4,10 +4,14 @@ import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Paint;
 import android.graphics.Path;
+import android.graphics.Picture;
+import android.graphics.Point;
 import android.graphics.PointF;
 import android.graphics.Rect;
 import android.graphics.RectF;
 import android.location.Location;
+import android.os.Debug;
+import android.util.Log;
 
 import androidx.annotation.Nullable;
 
@@ -15,11 +19,15 @@ import java.time.Duration;
 import java.time.LocalTime;
 import java.util.Calendar;
 
+import lombok.EqualsAndHashCode;
+
 class Painter {
 
+  private static final String TAG = "Painter";
+
   private static final float HOUR_DISC_RADIUS = 0.667f;
   private static final float SUN_AND_MOON_CENTRE_OFFSET = 0.3f;
-  private static final float SUN_AND_MOON_RADIUS = 0.15f;
+  static final float SUN_AND_MOON_RADIUS = 0.15f;
   private static final float SUN_RAY_WIDTH_DEGREES = 20;
   private static final float SUN_RAY_LENGTH = 0.35f;
   private static final float SUN_RAY_OFFSET = 0.2f;
@@ -36,198 +44,683 @@ class Painter {
   private static final float SMALL_TICK_LENGTH = 0.05f;
   private static final float MINUTE_TICK_OUTER_RADIUS = 1f;
 
+  private static final String BACKGROUND_PICTURE_CACHE_NAME = "background picture";
+  private static final String BACKGROUND_RASTER_CACHE_NAME = "background raster";
+  /**
+   * Pictures don't report their size, so this is a rough estimate of a recorded background.
+   */
+  private static final long ESTIMATED_BACKGROUND_PICTURE_BYTE_COUNT = 32 * 1024;
+
+  private final CacheRegistry cacheRegistry;
+  private final SpriteCache spriteCache;
+  @Nullable
+  private final BackgroundDiskCache diskCache;
+  /* Distinguishes this painter's caches in the registry from those of other engines. */
+  private final String backgroundPictureCacheName;
+  private final String backgroundRasterCacheName;
+
+  /* The drawing commands of the background, which can be replayed at any size. */
+  private BackgroundRecording cachedBackgroundRecording = null;
   private Bitmap cachedBackground = null;
+  /**
+   * How long it took to record and rasterise the background the last time, for comparison with the
+   * cost of merely shifting it.
+   */
+  private long lastBackgroundBuildNanos = 0;
+  private long backgroundBuildCount = 0;
+  private boolean roundFace = false;
+  @Nullable
+  private PerformanceOverlay performanceOverlay = null;
+  /* Counts the invalidations, so that callers can tell whether the background has changed. */
+  private int backgroundGeneration = 0;
+
+  /**
+   * The tips of the hands, rounded to whole pixels. If these haven't changed since the last frame,
+   * then neither has anything else that the hands draw. It's meant to be reused from frame to
+   * frame.
+   */
+  @EqualsAndHashCode
+  static class HandPositions {
+
+    private int hourX;
+    private int hourY;
+    private int minuteX;
+    private int minuteY;
+    private int secondX;
+    private int secondY;
+  }
+
+  /**
+   * Creates a painter with sprites of its own, e.g., for rendering outside the watch face service.
+   */
+  Painter(CacheRegistry cacheRegistry) {
+    this(cacheRegistry, new SpriteCache(cacheRegistry), null, "");
+  }
+
+  /**
+   * Creates a painter that shares sprites with others, e.g., one for each engine.
+   *
+   * @param diskCache
+   *     where to save rebuilt backgrounds, and to look for one before rebuilding, if anywhere
+   * @param cacheNamePrefix
+   *     distinguishes this painter's caches from those of the other painters in the same registry
+   */
+  Painter(
+      CacheRegistry cacheRegistry,
+      SpriteCache spriteCache,
+      @Nullable BackgroundDiskCache diskCache,
+      String cacheNamePrefix
+  ) {
+    this.cacheRegistry = cacheRegistry;
+    this.spriteCache = spriteCache;
+    this.diskCache = diskCache;
+    backgroundPictureCacheName = cacheNamePrefix + BACKGROUND_PICTURE_CACHE_NAME;
+    backgroundRasterCacheName = cacheNamePrefix + BACKGROUND_RASTER_CACHE_NAME;
+  }
+
+  /**
+   * Sets whether the screen is round. On a round screen, the corners of the background are left
+   * undrawn, because they'd never be seen. This takes effect when the background is next
+   * recorded, so the caller must invalidate it.
+   */
+  void setRoundFace(boolean roundFace) {
+    this.roundFace = roundFace;
+  }
+
+  boolean isRoundFace() {
+    return roundFace;
+  }
+
+  /**
+   * Sets the overlay to draw over each frame, or null to draw none.
+   */
+  void setPerformanceOverlay(@Nullable PerformanceOverlay performanceOverlay) {
+    this.performanceOverlay = performanceOverlay;
+  }
 
+  /**
+   * Draws a frame, rebuilding the background first if it isn't cached.
+   *
+   * @param calendar
+   *     is set to the time of the frame only if the background is rebuilt, since setting it
+   *     recomputes all of its fields
+   */
   void draw(
       Canvas canvas,
       Rect bounds,
       Palette palette,
       Calendar calendar,
+      TimeSource.Time time,
       @Nullable Location location,
-      boolean drawRealisticSun,
-      boolean showHourNumbers,
-      boolean angleHourNumbers,
-      boolean showSingleMinuteTicks,
-      boolean showSecondHand,
-      boolean animateSecondHandSmoothly
+      FaceOptions options,
+      Point burnInShift
   ) {
     final PointF centre = new PointF(bounds.width() / 2f, bounds.height() / 2f);
     final float faceRadius = bounds.width() / 2f;
 
     if (cachedBackground == null) {
-      cacheBackground(palette,
+      final long buildStartNanos = System.nanoTime();
+      calendar.setTimeInMillis(time.getEpochMillis());
+      // Only a full rebuild is worth avoiding. Replaying a recording is about as quick as loading.
+      final BackgroundDiskCache.Key diskCacheKey =
+          (diskCache != null && cachedBackgroundRecording == null) ?
+          getDiskCacheKey(palette, faceRadius, calendar, time, location, options) :
+          null;
+      if (diskCacheKey == null ||
+          !loadBackground(diskCacheKey, canvas.isHardwareAccelerated())) {
+        if (cachedBackgroundRecording == null) {
+          recordBackground(palette, centre, faceRadius, calendar, time, location, options);
+        }
+        cacheBackground(palette, faceRadius, canvas.isHardwareAccelerated(), diskCacheKey);
+      }
+      lastBackgroundBuildNanos = System.nanoTime() - buildStartNanos;
+      backgroundBuildCount++;
+    }
+    if (burnInShift.x == 0 && burnInShift.y == 0) {
+      drawCachedBackground(canvas);
+      drawHands(canvas,
+          palette,
           centre,
           faceRadius,
-          calendar,
-          location,
-          drawRealisticSun,
-          showHourNumbers,
-          angleHourNumbers,
-          showSingleMinuteTicks
+          time,
+          options.isShowSecondHand(),
+          options.isAnimateSecondHandSmoothly()
       );
+      drawPerformanceOverlay(canvas, bounds);
+      return;
     }
+
+    // Shift the whole frame by blitting the cached background elsewhere, rather than redrawing it.
+    final long shiftStartNanos = System.nanoTime();
+    canvas.drawPaint(palette.getBackgroundPaint());
+    canvas.save();
+    canvas.translate(burnInShift.x, burnInShift.y);
     drawCachedBackground(canvas);
     drawHands(canvas,
         palette,
         centre,
         faceRadius,
-        calendar,
-        showSecondHand,
-        animateSecondHandSmoothly
+        time,
+        options.isShowSecondHand(),
+        options.isAnimateSecondHandSmoothly()
     );
+    canvas.restore();
+    drawPerformanceOverlay(canvas, bounds);
+    if (BuildConfig.DEBUG) {
+      Log.d(TAG,
+          "Shifted frame by (" + burnInShift.x + ", " + burnInShift.y + ") in " +
+              (System.nanoTime() - shiftStartNanos) / 1000 + " µs. The last full background build " +
+              "took " + lastBackgroundBuildNanos / 1000 + " µs."
+      );
+    }
   }
 
-  private void cacheBackground(
+  private void drawPerformanceOverlay(Canvas canvas, Rect bounds) {
+    if (performanceOverlay != null) {
+      performanceOverlay.draw(canvas, bounds);
+    }
+  }
+
+  private void recordBackground(
       Palette palette,
       PointF centre,
       float faceRadius,
       Calendar calendar,
+      TimeSource.Time time,
       @Nullable Location location,
-      boolean drawRealisticSun,
-      boolean showHourNumbers,
-      boolean angleHourNumbers,
-      boolean showSingleMinuteTicks
+      FaceOptions options
   ) {
     System.out.println("Drawing bg from scratch.");
+    final BackgroundLayout layout = new BackgroundLayout(palette,
+        centre,
+        faceRadius,
+        calendar,
+        time,
+        location,
+        options,
+        roundFace
+    );
+    cachedBackgroundRecording = new BackgroundRecording(layout, palette);
+    cacheRegistry.put(backgroundPictureCacheName,
+        CacheRegistry.PRIORITY_SPARE,
+        ESTIMATED_BACKGROUND_PICTURE_BYTE_COUNT,
+        () -> cachedBackgroundRecording = null
+    );
+  }
+
+  /**
+   * Works out the key under which the background is saved to disk. Within a local day, the
+   * background depends only on the things in the key; even the moon is drawn in one of a few
+   * phases.
+   */
+  private BackgroundDiskCache.Key getDiskCacheKey(
+      Palette palette,
+      float faceRadius,
+      Calendar calendar,
+      TimeSource.Time time,
+      @Nullable Location location,
+      FaceOptions options
+  ) {
+    final long epochDay = Math.floorDiv(
+        time.getEpochMillis() + time.getZoneOffsetSeconds() * 1000L,
+        Duration.ofDays(1).toMillis()
+    );
+    return new BackgroundDiskCache.Key(palette.getSpriteKey(),
+        (int) (faceRadius * 2),
+        epochDay,
+        roundFace,
+        options.isDrawRealisticSun(),
+        options.isShowHourNumbers(),
+        options.isAngleHourNumbers(),
+        options.isShowSingleMinuteTicks(),
+        location == null ? null : location.getLatitude(),
+        location == null ? null : location.getLongitude(),
+        time.getZoneOffsetSeconds(),
+        MoonSpriteAtlas.getPhaseIndex(AstronomyCalculator.getLunarPhase(calendar))
+    );
+  }
+
+  /**
+   * Loads the background from disk, if it was saved there before.
+   *
+   * @return whether the background was loaded
+   */
+  private boolean loadBackground(BackgroundDiskCache.Key key, boolean useHardwareBitmap) {
+    final Bitmap backgroundBitmap = diskCache.load(key);
+    if (backgroundBitmap == null) {
+      return false;
+    }
+    if (BuildConfig.DEBUG) {
+      Log.d(TAG, "Loaded the background from disk.");
+    }
+    registerBackgroundRaster(useHardwareBitmap ?
+                             toHardwareBitmap(backgroundBitmap) :
+                             backgroundBitmap);
+    return true;
+  }
+
+  /**
+   * Rasterises the recorded background at the given size, with the sun and moon drawn from sprites
+   * of that size.
+   *
+   * @param diskCacheKey
+   *     the key under which to save the result to disk, or null not to save it
+   */
+  private void cacheBackground(
+      Palette palette,
+      float faceRadius,
+      boolean useHardwareBitmap,
+      @Nullable BackgroundDiskCache.Key diskCacheKey
+  ) {
+    final float sunAndMoonRadius = SUN_AND_MOON_RADIUS * faceRadius;
     Bitmap backgroundBitmap = Bitmap.createBitmap((int) (faceRadius * 2),
         (int) (faceRadius * 2),
         Bitmap.Config.ARGB_8888
     );
+    // While replaying, the bitmap and one sector layer, no larger than it, are allocated at once.
+    cacheRegistry.recordTransient(2L * backgroundBitmap.getAllocationByteCount());
     Canvas backgroundCanvas = new Canvas(backgroundBitmap);
-    drawBackground(backgroundCanvas,
+    cachedBackgroundRecording.replay(backgroundCanvas,
+        faceRadius,
         palette,
-        centre,
+        spriteCache.getSunSprites(palette, sunAndMoonRadius),
+        spriteCache.getMoonSpriteAtlas(palette, sunAndMoonRadius)
+    );
+    spriteCache.updateRegistrations();
+    if (diskCacheKey != null) {
+      // This must happen before the conversion, which recycles the software bitmap.
+      diskCache.save(diskCacheKey, backgroundBitmap);
+    }
+    registerBackgroundRaster(useHardwareBitmap ?
+                             toHardwareBitmap(backgroundBitmap) :
+                             backgroundBitmap);
+  }
+
+  private void registerBackgroundRaster(Bitmap backgroundBitmap) {
+    cachedBackground = backgroundBitmap;
+    cacheRegistry.put(backgroundRasterCacheName,
+        CacheRegistry.PRIORITY_ACTIVE,
+        cachedBackground.getAllocationByteCount(),
+        () -> cachedBackground = null
+    );
+  }
+
+  /**
+   * Moves a finished software bitmap into graphics memory, so that it needn't be uploaded to the
+   * GPU again on every frame. If the conversion fails, the software bitmap is returned unchanged.
+   * <p>
+   * Hardware bitmaps can only be drawn onto hardware-accelerated canvases.
+   */
+  private static Bitmap toHardwareBitmap(Bitmap softwareBitmap) {
+    if (BuildConfig.DEBUG) {
+      logMemoryUsage("before hardware bitmap conversion");
+    }
+    final Bitmap hardwareBitmap = softwareBitmap.copy(Bitmap.Config.HARDWARE, false);
+    if (hardwareBitmap == null) {
+      Log.w(TAG, "Could not create a hardware bitmap. Falling back to a software bitmap.");
+      return softwareBitmap;
+    }
+    softwareBitmap.recycle();
+    if (BuildConfig.DEBUG) {
+      logMemoryUsage("after hardware bitmap conversion");
+    }
+    return hardwareBitmap;
+  }
+
+  private static void logMemoryUsage(String when) {
+    final Debug.MemoryInfo memoryInfo = new Debug.MemoryInfo();
+    Debug.getMemoryInfo(memoryInfo);
+    Log.d(TAG,
+        "Memory " + when + ": Java heap " + memoryInfo.getMemoryStat("summary.java-heap") +
+            " kB, graphics " + memoryInfo.getMemoryStat("summary.graphics") + " kB."
+    );
+  }
+
+  /**
+   * Draws only the background, from scratch, just as a rebuild would record it. It's drawn straight
+   * onto the canvas rather than through a recording, so that the canvas sees every call. The tests
+   * use this to measure how much work a rebuild does.
+   */
+  void drawUncachedBackground(
+      Canvas canvas,
+      Rect bounds,
+      Palette palette,
+      Calendar calendar,
+      TimeSource.Time time,
+      @Nullable Location location,
+      FaceOptions options
+  ) {
+    final float faceRadius = bounds.width() / 2f;
+    final float sunAndMoonRadius = SUN_AND_MOON_RADIUS * faceRadius;
+    final BackgroundLayout layout = new BackgroundLayout(palette,
+        new PointF(faceRadius, bounds.height() / 2f),
         faceRadius,
         calendar,
+        time,
         location,
-        drawRealisticSun,
-        showHourNumbers,
-        angleHourNumbers,
-        showSingleMinuteTicks
+        options,
+        roundFace
     );
-    cachedBackground = backgroundBitmap;
+    composeBackground(canvas,
+        layout,
+        faceRadius,
+        palette,
+        spriteCache.getSunSprites(palette, sunAndMoonRadius),
+        spriteCache.getMoonSpriteAtlas(palette, sunAndMoonRadius),
+        (partCanvas, part) -> layout.drawPart(partCanvas, palette, part)
+    );
+    spriteCache.updateRegistrations();
   }
 
   private void drawCachedBackground(Canvas canvas) {
     canvas.drawBitmap(cachedBackground, 0, 0, null);
   }
 
+  /**
+   * Discards the background entirely, so that it will be worked out and drawn again from scratch.
+   */
   void invalidateCachedBackground() {
+    backgroundGeneration++;
+    cachedBackgroundRecording = null;
     cachedBackground = null;
+    cacheRegistry.remove(backgroundPictureCacheName);
+    cacheRegistry.remove(backgroundRasterCacheName);
   }
 
-  private static void drawBackground(
-      Canvas canvas,
-      Palette palette,
-      PointF centre,
-      float faceRadius,
-      Calendar calendar,
-      @Nullable Location location,
-      boolean drawRealisticSun,
-      boolean showHourNumbers,
-      boolean angleHourNumbers,
-      boolean showSingleMinuteTicks
-  ) {
-    canvas.drawPaint(palette.getBackgroundPaint());
+  /**
+   * Returns a number that changes whenever the background is invalidated.
+   */
+  int getBackgroundGeneration() {
+    return backgroundGeneration;
+  }
 
-    float hourDiscRadius = HOUR_DISC_RADIUS * faceRadius;
+  /**
+   * Returns the number of times that the background has been rasterised.
+   */
+  long getBackgroundBuildCount() {
+    return backgroundBuildCount;
+  }
 
-    RectF boundingBox = new RectF(centre.x - hourDiscRadius,
-        centre.y - hourDiscRadius,
-        centre.x + hourDiscRadius,
-        centre.y + hourDiscRadius
-    );
+  /**
+   * Discards only the rasterised background, e.g., because the surface changed. The recorded
+   * drawing commands are replayed at the new size.
+   */
+  void invalidateCachedBackgroundRaster() {
+    cachedBackground = null;
+    cacheRegistry.remove(backgroundRasterCacheName);
+  }
 
-    final Duration solarDayLength = (location != null) ?
-                                    AstronomyCalculator.getSolarDayLength(location, calendar) :
-                                    Duration.ofHours(12);
-    final LocalTime solarNoon = (location != null) ?
-                                AstronomyCalculator.getSolarNoon(location, calendar) :
-                                LocalTime.NOON;
+  /**
+   * Draws one of the {@link BackgroundLayout} parts of the background.
+   */
+  private interface BackgroundPartDrawer {
 
+    void draw(Canvas canvas, int part);
+  }
 
-    final float noonOffsetDayFraction = solarNoon.toSecondOfDay() / (24f * 60 * 60);
-    final float dayLengthFraction = solarDayLength.getSeconds() / (24f * 60 * 60);
+  /**
+   * Where everything in the background goes on a face of one size, worked out once. The
+   * background is drawn in parts, so that the parts can be recorded and the sun and moon drawn
+   * between them. See {@link #composeBackground}.
+   */
+  private static class BackgroundLayout {
 
-    final float sunriseOffsetFraction = noonOffsetDayFraction - (dayLengthFraction / 2);
-    Path daySectorPath = new Path();
-    Path nightSectorPath = new Path();
-    if (dayLengthFraction == 0) {
-      nightSectorPath.addOval(boundingBox, Path.Direction.CW);
-    } else if (dayLengthFraction == 1) {
-      daySectorPath.addOval(boundingBox, Path.Direction.CW);
-    } else {
-      daySectorPath.moveTo(centre.x, centre.y);
-      daySectorPath.arcTo(boundingBox, 90 + sunriseOffsetFraction * 360, dayLengthFraction * 360);
-      daySectorPath.close();
-      nightSectorPath.moveTo(centre.x, centre.y);
-      nightSectorPath.arcTo(boundingBox,
-          90 + sunriseOffsetFraction * 360 + dayLengthFraction * 360,
-          360 - dayLengthFraction * 360
-      );
-      nightSectorPath.close();
-    }
+    private static final int PART_BASE = 0;
+    private static final int PART_DAY_SECTOR = 1;
+    private static final int PART_DAY_SECTOR_OUTLINE = 2;
+    private static final int PART_NIGHT_SECTOR = 3;
+    private static final int PART_NIGHT_SECTOR_OUTLINE = 4;
+    private static final int PART_TICKS = 5;
+    private static final int PART_COUNT = 6;
 
-    final float noonAngle = noonOffsetDayFraction * 360 + 180;
+    private final PointF centre;
+    private final float faceRadius;
+    private final boolean roundFace;
+    private final boolean drawRealisticSun;
+    private final boolean showHourNumbers;
+    private final boolean angleHourNumbers;
+    private final boolean showSingleMinuteTicks;
+    private final Path daySectorPath = new Path();
+    private final Path nightSectorPath = new Path();
+    private final RectF daySectorLayerBounds;
+    private final RectF nightSectorLayerBounds;
+    private final PointF sunCentre;
+    private final PointF moonCentre;
+    private final float lunarPhase;
 
-    if (!daySectorPath.isEmpty()) {
-      Bitmap daySectorBitmap = Bitmap.createBitmap((int) (faceRadius * 2),
-          (int) (faceRadius * 2),
-          Bitmap.Config.ARGB_8888
+    BackgroundLayout(
+        Palette palette,
+        PointF centre,
+        float faceRadius,
+        Calendar calendar,
+        TimeSource.Time time,
+        @Nullable Location location,
+        FaceOptions options,
+        boolean roundFace
+    ) {
+      this.centre = centre;
+      this.faceRadius = faceRadius;
+      this.roundFace = roundFace;
+      drawRealisticSun = options.isDrawRealisticSun();
+      showHourNumbers = options.isShowHourNumbers();
+      angleHourNumbers = options.isAngleHourNumbers();
+      showSingleMinuteTicks = options.isShowSingleMinuteTicks();
+
+      float hourDiscRadius = HOUR_DISC_RADIUS * faceRadius;
+      RectF boundingBox = new RectF(centre.x - hourDiscRadius,
+          centre.y - hourDiscRadius,
+          centre.x + hourDiscRadius,
+          centre.y + hourDiscRadius
       );
-      Canvas daySectorCanvas = new Canvas(daySectorBitmap);
-      daySectorCanvas.drawPath(daySectorPath, palette.getDaySectorPaint());
-      if (palette.getDaySectorPaint().getStyle().equals(Paint.Style.STROKE)) {
-        daySectorCanvas.drawPath(daySectorPath, palette.getBackgroundPaint());
+
+      final Duration solarDayLength = (location != null) ?
+                                      AstronomyCalculator.getSolarDayLength(location, calendar) :
+                                      Duration.ofHours(12);
+      final LocalTime solarNoon = (location != null) ?
+                                  AstronomyCalculator.getSolarNoon(location, time) :
+                                  LocalTime.NOON;
+
+
+      final float noonOffsetDayFraction = solarNoon.toSecondOfDay() / (24f * 60 * 60);
+      final float dayLengthFraction = solarDayLength.getSeconds() / (24f * 60 * 60);
+
+      final float sunriseOffsetFraction = noonOffsetDayFraction - (dayLengthFraction / 2);
+      if (dayLengthFraction == 0) {
+        nightSectorPath.addOval(boundingBox, Path.Direction.CW);
+      } else if (dayLengthFraction == 1) {
+        daySectorPath.addOval(boundingBox, Path.Direction.CW);
       } else {
-        // This ensures that the sector is filled for the purpose of masking.
-        daySectorCanvas.drawPath(daySectorPath, palette.getDaySectorPaint());
+        daySectorPath.moveTo(centre.x, centre.y);
+        daySectorPath.arcTo(boundingBox,
+            90 + sunriseOffsetFraction * 360,
+            dayLengthFraction * 360
+        );
+        daySectorPath.close();
+        nightSectorPath.moveTo(centre.x, centre.y);
+        nightSectorPath.arcTo(boundingBox,
+            90 + sunriseOffsetFraction * 360 + dayLengthFraction * 360,
+            360 - dayLengthFraction * 360
+        );
+        nightSectorPath.close();
       }
-      drawSun(daySectorCanvas,
-          palette,
-          cartesian(centre, noonAngle, SUN_AND_MOON_CENTRE_OFFSET * faceRadius),
-          SUN_AND_MOON_RADIUS * faceRadius,
-          drawRealisticSun
-      );// Apply the sector stroke last.
-      if (palette.getDaySectorPaint().getStyle().equals(Paint.Style.STROKE)) {
-        daySectorCanvas.drawPath(daySectorPath, palette.getDaySectorPaint());
+      daySectorLayerBounds = getSectorLayerBounds(daySectorPath, palette.getDaySectorPaint());
+      nightSectorLayerBounds = getSectorLayerBounds(nightSectorPath,
+          palette.getNightSectorPaint()
+      );
+
+      final float noonAngle = noonOffsetDayFraction * 360 + 180;
+      sunCentre = cartesian(centre, noonAngle, SUN_AND_MOON_CENTRE_OFFSET * faceRadius);
+      moonCentre = cartesian(centre, noonAngle + 180f, SUN_AND_MOON_CENTRE_OFFSET * faceRadius);
+      lunarPhase = AstronomyCalculator.getLunarPhase(calendar);
+    }
+
+    void drawPart(Canvas canvas, Palette palette, int part) {
+      switch (part) {
+        case PART_BASE:
+          drawBase(canvas, palette);
+          break;
+        case PART_DAY_SECTOR:
+          drawSector(canvas, palette, daySectorPath, palette.getDaySectorPaint());
+          break;
+        case PART_DAY_SECTOR_OUTLINE:
+          drawSectorOutline(canvas, daySectorPath, palette.getDaySectorPaint());
+          break;
+        case PART_NIGHT_SECTOR:
+          drawSector(canvas, palette, nightSectorPath, palette.getNightSectorPaint());
+          break;
+        case PART_NIGHT_SECTOR_OUTLINE:
+          drawSectorOutline(canvas, nightSectorPath, palette.getNightSectorPaint());
+          break;
+        case PART_TICKS:
+          drawTicks(canvas,
+              palette,
+              centre,
+              faceRadius,
+              showHourNumbers,
+              angleHourNumbers,
+              showSingleMinuteTicks
+          );
+          break;
+        default:
+          throw new IllegalArgumentException("There's no background part " + part + ".");
       }
-      canvas.drawBitmap(daySectorBitmap, 0, 0, null);
     }
-    if (!nightSectorPath.isEmpty()) {
-      Bitmap nightSectorBitmap = Bitmap.createBitmap((int) (faceRadius * 2),
-          (int) (faceRadius * 2),
-          Bitmap.Config.ARGB_8888
-      );
-      Canvas nightSectorCanvas = new Canvas(nightSectorBitmap);
-      nightSectorCanvas.drawPath(nightSectorPath, palette.getNightSectorPaint());
-      if (palette.getNightSectorPaint().getStyle().equals(Paint.Style.STROKE)) {
-        nightSectorCanvas.drawPath(nightSectorPath, palette.getBackgroundPaint());
+
+    private void drawBase(Canvas canvas, Palette palette) {
+      if (roundFace) {
+        /*
+         * The sectors cover the hour disc, so the background only needs to fill the ring around
+         * it. The ring overlaps the disc by a pixel, so that no seam shows between their edges.
+         */
+        final float hourDiscRadius = HOUR_DISC_RADIUS * faceRadius;
+        final Path ringPath = new Path();
+        ringPath.addCircle(centre.x, centre.y, faceRadius, Path.Direction.CW);
+        ringPath.addCircle(centre.x, centre.y, hourDiscRadius - 1, Path.Direction.CCW);
+        canvas.drawPath(ringPath, palette.getBackgroundPaint());
       } else {
+        canvas.drawPaint(palette.getBackgroundPaint());
+      }
+    }
+
+    private static void drawSector(
+        Canvas canvas, Palette palette, Path sectorPath, Paint sectorPaint
+    ) {
+      canvas.drawPath(sectorPath, sectorPaint);
+      if (sectorPaint.getStyle().equals(Paint.Style.STROKE)) {
         // This ensures that the sector is filled for the purpose of masking.
-        nightSectorCanvas.drawPath(nightSectorPath, palette.getNightSectorPaint());
+        canvas.drawPath(sectorPath, palette.getBackgroundPaint());
       }
-      drawMoon(nightSectorCanvas,
-          palette,
-          cartesian(centre, noonAngle + 180f, SUN_AND_MOON_CENTRE_OFFSET * faceRadius),
-          SUN_AND_MOON_RADIUS * faceRadius,
-          AstronomyCalculator.getLunarPhase(calendar)
-      );
+    }
+
+    private static void drawSectorOutline(Canvas canvas, Path sectorPath, Paint sectorPaint) {
       // Apply the sector stroke last.
-      if (palette.getNightSectorPaint().getStyle().equals(Paint.Style.STROKE)) {
-        nightSectorCanvas.drawPath(nightSectorPath, palette.getNightSectorPaint());
+      if (sectorPaint.getStyle().equals(Paint.Style.STROKE)) {
+        canvas.drawPath(sectorPath, sectorPaint);
       }
-      canvas.drawBitmap(nightSectorBitmap, 0, 0, null);
     }
+  }
 
-    drawTicks(canvas,
-        palette,
-        centre,
-        faceRadius,
-        showHourNumbers,
-        angleHourNumbers,
-        showSingleMinuteTicks
-    );
+  /**
+   * The background's parts, recorded once on a face of one size, to be replayed on a face of any
+   * size. The sun and moon aren't recorded, since their sprites would be resampled if the
+   * recording were scaled, so they're drawn from sprites of the right size on each replay.
+   */
+  private static class BackgroundRecording {
+
+    private final BackgroundLayout layout;
+    private final Picture[] parts = new Picture[BackgroundLayout.PART_COUNT];
+
+    BackgroundRecording(BackgroundLayout layout, Palette palette) {
+      this.layout = layout;
+      final int size = (int) (layout.faceRadius * 2);
+      for (int part = 0; part < parts.length; part++) {
+        parts[part] = new Picture();
+        layout.drawPart(parts[part].beginRecording(size, size), palette, part);
+        parts[part].endRecording();
+      }
+    }
+
+    void replay(
+        Canvas canvas,
+        float faceRadius,
+        Palette palette,
+        SunSprites sunSprites,
+        MoonSpriteAtlas moonSpriteAtlas
+    ) {
+      composeBackground(canvas,
+          layout,
+          faceRadius,
+          palette,
+          sunSprites,
+          moonSpriteAtlas,
+          (partCanvas, part) -> partCanvas.drawPicture(parts[part])
+      );
+    }
+  }
+
+  /**
+   * Draws the background on a face of the given radius, scaling its parts from the size for which
+   * they were laid out, and drawing the sun and moon from sprites of the given size among them.
+   */
+  private static void composeBackground(
+      Canvas canvas,
+      BackgroundLayout layout,
+      float faceRadius,
+      Palette palette,
+      SunSprites sunSprites,
+      MoonSpriteAtlas moonSpriteAtlas,
+      BackgroundPartDrawer partDrawer
+  ) {
+    final float scale = faceRadius / layout.faceRadius;
+    canvas.save();
+    canvas.scale(scale, scale);
+    partDrawer.draw(canvas, BackgroundLayout.PART_BASE);
+    if (!layout.daySectorPath.isEmpty()) {
+      // Mask the sector in a layer. An offscreen bitmap wouldn't scale with the recording.
+      canvas.saveLayer(layout.daySectorLayerBounds, palette.getLayerPaint());
+      partDrawer.draw(canvas, BackgroundLayout.PART_DAY_SECTOR);
+      // The sprites are drawn at the face's own scale, so that they stay sharp.
+      canvas.save();
+      canvas.scale(1 / scale, 1 / scale);
+      sunSprites.draw(canvas,
+          new PointF(layout.sunCentre.x * scale, layout.sunCentre.y * scale),
+          layout.drawRealisticSun,
+          palette.getSpritePaint()
+      );
+      canvas.restore();
+      partDrawer.draw(canvas, BackgroundLayout.PART_DAY_SECTOR_OUTLINE);
+      canvas.restore();
+    }
+    if (!layout.nightSectorPath.isEmpty()) {
+      canvas.saveLayer(layout.nightSectorLayerBounds, palette.getLayerPaint());
+      partDrawer.draw(canvas, BackgroundLayout.PART_NIGHT_SECTOR);
+      canvas.save();
+      canvas.scale(1 / scale, 1 / scale);
+      moonSpriteAtlas.draw(canvas,
+          new PointF(layout.moonCentre.x * scale, layout.moonCentre.y * scale),
+          layout.lunarPhase,
+          palette.getSpritePaint()
+      );
+      canvas.restore();
+      partDrawer.draw(canvas, BackgroundLayout.PART_NIGHT_SECTOR_OUTLINE);
+      canvas.restore();
+    }
+    partDrawer.draw(canvas, BackgroundLayout.PART_TICKS);
+    canvas.restore();
+  }
+
+  /**
+   * Works out the smallest layer that can hold everything drawn for a sector: the sector, its
+   * outline, and whatever is drawn atop it. Nothing outside the sector survives the masking, so the
+   * result is the same as with a full-size layer, but far fewer pixels are allocated and blitted.
+   */
+  private static RectF getSectorLayerBounds(Path sectorPath, Paint sectorPaint) {
+    final RectF bounds = new RectF();
+    sectorPath.computeBounds(bounds, false);
+    // Allow for half of the outline and for anti-aliasing.
+    final float margin = sectorPaint.getStrokeWidth() / 2 + 1;
+    bounds.inset(-margin, -margin);
+    return bounds;
   }
 
   private static void drawTicks(
@@ -308,28 +801,13 @@ class Painter {
       Palette palette,
       PointF centre,
       float faceRadius,
-      Calendar calendar,
+      TimeSource.Time time,
       boolean showSecondHand,
       boolean animateSecondHandSmoothly
   ) {
-    /*
-     * These calculations reflect the rotation in degrees per unit of time, e.g.,
-     * 360 / 60 = 6 and 360 / 12 = 30.
-     */
-    final float partialSecond = animateSecondHandSmoothly ?
-                                calendar.get(Calendar.MILLISECOND) / 1000f :
-                                0;
-    final float seconds = calendar.get(Calendar.SECOND) + partialSecond;
-    final float secondsRotation = seconds * (360 / 60f);
-
-    // In ambient mode, the minute hand should tick instead of moving gradually.
-    final float partialMinute = showSecondHand ? (calendar.get(Calendar.SECOND) / 60f) : 0;
-    final float minutesRotation = (calendar.get(Calendar.MINUTE) + partialMinute) * (360 / 60f);
-
-    final float partialHour = calendar.get(Calendar.MINUTE) / 60f;
-    // The hour hand moves 15 degrees per hour on a 24-hour clock, not 30.
-    final float hoursRotation =
-        ((calendar.get(Calendar.HOUR_OF_DAY) + partialHour) * (360 / 24f)) + 180;
+    final float secondsRotation = getSecondsRotation(time, animateSecondHandSmoothly);
+    final float minutesRotation = getMinutesRotation(time, showSecondHand);
+    final float hoursRotation = getHoursRotation(time);
 
     PointF secondHandEnd = cartesian(centre, secondsRotation, SECOND_HAND_LENGTH * faceRadius);
     PointF minuteHandEnd = cartesian(centre, minutesRotation, MINUTE_HAND_LENGTH * faceRadius);
@@ -352,15 +830,76 @@ class Painter {
     canvas.drawCircle(centre.x, centre.y, HAND_CAP_RADIUS * faceRadius, palette.getHandCapPaint());
   }
 
-  private static void drawSun(
-      Canvas canvas, Palette palette, PointF centre, float radius, boolean drawRealisticSun
+  /**
+   * Works out where the tips of the hands will be drawn at the given time, on a face of the given
+   * radius.
+   */
+  static void getHandPositions(
+      float faceRadius, TimeSource.Time time, FaceOptions options, HandPositions positions
+  ) {
+    final float hoursRotation = getHoursRotation(time);
+    final float minutesRotation = getMinutesRotation(time, options.isShowSecondHand());
+    positions.hourX = getTipX(hoursRotation, HOUR_HAND_LENGTH * faceRadius);
+    positions.hourY = getTipY(hoursRotation, HOUR_HAND_LENGTH * faceRadius);
+    positions.minuteX = getTipX(minutesRotation, MINUTE_HAND_LENGTH * faceRadius);
+    positions.minuteY = getTipY(minutesRotation, MINUTE_HAND_LENGTH * faceRadius);
+    if (options.isShowSecondHand()) {
+      final float secondsRotation = getSecondsRotation(time, options.isAnimateSecondHandSmoothly());
+      positions.secondX = getTipX(secondsRotation, SECOND_HAND_LENGTH * faceRadius);
+      positions.secondY = getTipY(secondsRotation, SECOND_HAND_LENGTH * faceRadius);
+    } else {
+      positions.secondX = 0;
+      positions.secondY = 0;
+    }
+  }
+
+  private static int getTipX(float angle, float length) {
+    return Math.round((float) Math.sin(Math.toRadians(angle)) * length);
+  }
+
+  private static int getTipY(float angle, float length) {
+    return Math.round((float) -Math.cos(Math.toRadians(angle)) * length);
+  }
+
+  /*
+   * These calculations reflect the rotation in degrees per unit of time, e.g.,
+   * 360 / 60 = 6 and 360 / 12 = 30.
+   */
+
+  private static float getSecondsRotation(TimeSource.Time time, boolean animateSmoothly) {
+    final float partialSecond = animateSmoothly ? time.getMillisecond() / 1000f : 0;
+    return (time.getSecond() + partialSecond) * (360 / 60f);
+  }
+
+  private static float getMinutesRotation(TimeSource.Time time, boolean showSecondHand) {
+    // In ambient mode, the minute hand should tick instead of moving gradually.
+    final float partialMinute = showSecondHand ? (time.getSecond() / 60f) : 0;
+    return (time.getMinute() + partialMinute) * (360 / 60f);
+  }
+
+  private static float getHoursRotation(TimeSource.Time time) {
+    final float partialHour = time.getMinute() / 60f;
+    // The hour hand moves 15 degrees per hour on a 24-hour clock, not 30.
+    return ((time.getHour() + partialHour) * (360 / 24f)) + 180;
+  }
+
+  /**
+   * Draws the sun from scratch. On the face, it's drawn from {@link SunSprites} instead.
+   */
+  static void drawSun(
+      Canvas canvas,
+      PointF centre,
+      float radius,
+      boolean drawRealisticSun,
+      Paint cartoonPaint,
+      Paint realisticPaint
   ) {
     if (drawRealisticSun) {
-      canvas.drawCircle(centre.x, centre.y, radius, palette.getRealisticSunPaint());
+      canvas.drawCircle(centre.x, centre.y, radius, realisticPaint);
       return;
     }
 
-    canvas.drawCircle(centre.x, centre.y, radius, palette.getCartoonSunPaint());
+    canvas.drawCircle(centre.x, centre.y, radius, cartoonPaint);
     final float rayOffset = radius * SUN_RAY_OFFSET;
     final float rayLength = radius * SUN_RAY_LENGTH;
     for (int rayIndex = 0; rayIndex < 12; rayIndex++) {
@@ -379,11 +918,18 @@ class Painter {
           SUN_RAY_WIDTH_DEGREES
       );
       ray.close();
-      canvas.drawPath(ray, palette.getCartoonSunPaint());
+      canvas.drawPath(ray, cartoonPaint);
     }
 
   }
 
+  /**
+   * Returns how far the tips of the cartoon sun's rays reach from its centre.
+   */
+  static float getSunRayTipRadius(float radius) {
+    return radius * (1 + SUN_RAY_OFFSET + SUN_RAY_LENGTH);
+  }
+
   /**
    * Convert radial coordinates to a cartesian point.
    */
@@ -393,8 +939,17 @@ class Painter {
     return new PointF(x, y);
   }
 
-  private static void drawMoon(
-      Canvas canvas, Palette palette, PointF centre, float radius, float phase
+  /**
+   * Draws the moon from scratch. On the face, it's drawn from a {@link MoonSpriteAtlas} instead.
+   */
+  static void drawMoon(
+      Canvas canvas,
+      PointF centre,
+      float radius,
+      float phase,
+      Paint litPaint,
+      Paint darkPaint,
+      Paint linePaint
   ) {
     final float curveOffset = Math.abs((float) Math.cos(phase * 2 * Math.PI) * radius);
     final float crescentWidth = radius - curveOffset;
@@ -403,9 +958,9 @@ class Painter {
     final boolean fullMoon = !drawCurve && mostlyLit;
 
     if (fullMoon) {
-      canvas.drawCircle(centre.x, centre.y, radius, palette.getMoonLitPaint());
+      canvas.drawCircle(centre.x, centre.y, radius, litPaint);
     } else {
-      canvas.drawCircle(centre.x, centre.y, radius, palette.getMoonDarkPaint());
+      canvas.drawCircle(centre.x, centre.y, radius, darkPaint);
     }
     if (drawCurve) {
       final boolean litOnRight = phase < 0.5f;
@@ -417,13 +972,13 @@ class Painter {
           litOnRight ? 270f : 90f,
           180f,
           true,
-          palette.getMoonLitPaint()
+          litPaint
       );
       canvas.drawOval(centre.x - curveOffset,
           centre.y - radius,
           centre.x + curveOffset,
           centre.y + radius,
-          mostlyLit ? palette.getMoonLitPaint() : palette.getMoonDarkPaint()
+          mostlyLit ? litPaint : darkPaint
       );
       canvas.drawArc(centre.x - curveOffset,
           centre.y - radius,
@@ -432,10 +987,10 @@ class Painter {
           curveGoesRight ? 270f : 90f,
           180f,
           false,
-          palette.getMoonLinePaint()
+          linePaint
       );
     }
-    canvas.drawCircle(centre.x, centre.y, radius, palette.getMoonLinePaint());
+    canvas.drawCircle(centre.x, centre.y, radius, linePaint);
   }
 
   private static void drawTick(
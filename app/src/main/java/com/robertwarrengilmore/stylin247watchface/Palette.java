@@ -5,9 +5,13 @@ import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.PorterDuff;
 import android.graphics.PorterDuffXfermode;
+import android.graphics.Typeface;
+import android.os.Trace;
 
 import androidx.core.content.res.ResourcesCompat;
 
+import java.util.Map;
+
 import lombok.Getter;
 
 @Getter
@@ -24,6 +28,20 @@ class Palette {
 
   private static final float AMBIENT_HOUR_DISC_STROKE_WIDTH = 0.015f;
 
+  /**
+   * A rough estimate of the memory held by a palette: its paints, with their native counterparts.
+   * The typeface isn't counted, because it is loaded once and shared between palettes.
+   */
+  static final long ESTIMATED_BYTE_COUNT = 17 * 512;
+
+  /**
+   * Adds one to the alpha of every pixel that it's drawn on, when used with the ADD mode. See
+   * {@link #getOverdrawPalette}.
+   */
+  private static final int OVERDRAW_COLOUR = Color.argb(1, 255, 255, 255);
+
+  private static Typeface numberTypeface = null;
+
   private final Paint hourHandPaint = new Paint();
   private final Paint minuteHandPaint = new Paint();
   private final Paint secondHandPaint = new Paint();
@@ -39,13 +57,27 @@ class Palette {
   private final Paint moonLitPaint = new Paint();
   private final Paint moonDarkPaint = new Paint();
   private final Paint moonLinePaint = new Paint();
+  /**
+   * Composites each sector's layer onto the face.
+   */
+  private final Paint layerPaint = new Paint();
+  /**
+   * Composites pre-drawn sprites of the sun and moon atop their sectors, just as their own paints
+   * are, so that the sectors mask them.
+   */
+  private final Paint spritePaint = new Paint();
 
   private final float scaleFactor;
+  /* Identifies the colours, for sharing sprites between palettes that would draw them alike. */
+  private String name;
+  private boolean lowBitAmbient;
+  private boolean burnInProtection;
 
   private Palette(
-      Context context, float scaleFactor
+      Context context, float scaleFactor, String name
   ) {
     this.scaleFactor = scaleFactor;
+    this.name = name;
 
     setLowBitAmbient(false);
     setBurnInProtection(false);
@@ -69,7 +101,7 @@ class Palette {
 
     numberPaint.setTextSize(NUMBER_TEXT_SIZE * scaleFactor);
     numberPaint.setTextAlign(Paint.Align.CENTER);
-    numberPaint.setTypeface(ResourcesCompat.getFont(context, R.font.ubuntu_regular));
+    numberPaint.setTypeface(getNumberTypeface(context));
 
     realisticSunPaint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC_ATOP));
     cartoonSunPaint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC_ATOP));
@@ -82,6 +114,45 @@ class Palette {
 
     moonLitPaint.setStyle(Paint.Style.FILL);
     moonLitPaint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC_ATOP));
+
+    spritePaint.setFilterBitmap(true);
+    spritePaint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC_ATOP));
+  }
+
+  /**
+   * Loads the typeface of the hour numbers the first time that it's needed, and shares it between
+   * every palette after that.
+   */
+  private static synchronized Typeface getNumberTypeface(Context context) {
+    if (numberTypeface == null) {
+      Trace.beginSection("Palette.getNumberTypeface");
+      try {
+        numberTypeface = ResourcesCompat.getFont(context, R.font.ubuntu_regular);
+      } finally {
+        Trace.endSection();
+      }
+    }
+    return numberTypeface;
+  }
+
+  private Paint[] getAllPaints() {
+    return new Paint[]{hourHandPaint,
+        minuteHandPaint,
+        secondHandPaint,
+        handCapPaint,
+        smallTickPaint,
+        largeTickPaint,
+        numberPaint,
+        backgroundPaint,
+        daySectorPaint,
+        cartoonSunPaint,
+        realisticSunPaint,
+        nightSectorPaint,
+        moonLitPaint,
+        moonDarkPaint,
+        moonLinePaint,
+        layerPaint,
+        spritePaint};
   }
 
   private void setAntiAlias(boolean value) {
@@ -101,7 +172,20 @@ class Palette {
     moonDarkPaint.setAntiAlias(value);
   }
 
+  float getSolarCoronaWidth() {
+    return SOLAR_CORONA_WIDTH * scaleFactor;
+  }
+
+  /**
+   * Returns a key that's the same for any two palettes that would draw the sun and moon alike at
+   * the same size.
+   */
+  String getSpriteKey() {
+    return name + (lowBitAmbient ? " low-bit" : "") + (burnInProtection ? " burn-in" : "");
+  }
+
   void setLowBitAmbient(boolean lowBitAmbient) {
+    this.lowBitAmbient = lowBitAmbient;
     setAntiAlias(!lowBitAmbient);
     if (lowBitAmbient) {
       realisticSunPaint.clearShadowLayer();
@@ -114,8 +198,8 @@ class Palette {
     }
   }
 
-  private static Palette getInteractivePalette(Context context, float scaleFactor) {
-    Palette palette = new Palette(context, scaleFactor);
+  private static Palette getInteractivePalette(Context context, float scaleFactor, String name) {
+    Palette palette = new Palette(context, scaleFactor, name);
 
     palette.daySectorPaint.setStyle(Paint.Style.FILL);
 
@@ -136,7 +220,7 @@ class Palette {
   }
 
   static Palette getMutedPalette(Context context, float scaleFactor) {
-    Palette palette = getInteractivePalette(context, scaleFactor);
+    Palette palette = getInteractivePalette(context, scaleFactor, "muted");
 
     palette.daySectorPaint.setColor(Color.HSVToColor(new float[]{200f, 0.25f, 0.6f}));
 
@@ -166,7 +250,7 @@ class Palette {
   }
 
   static Palette getVividPalette(Context context, float scaleFactor) {
-    Palette palette = getInteractivePalette(context, scaleFactor);
+    Palette palette = getInteractivePalette(context, scaleFactor, "vivid");
 
     palette.daySectorPaint.setColor(Color.HSVToColor(new float[]{185f, 1f, 1f}));
 
@@ -195,7 +279,90 @@ class Palette {
     return palette;
   }
 
+  /**
+   * Compiles a palette from one of the user's own schemes. The second hand keeps the colour that it
+   * has in the built-in schemes, and the hour numbers take the colour of the ticks.
+   */
+  static Palette getCustomPalette(
+      Context context, float scaleFactor, CustomColourScheme scheme
+  ) {
+    Palette palette = getInteractivePalette(context,
+        scaleFactor,
+        "custom " + scheme.getColourKey()
+    );
+
+    palette.daySectorPaint.setColor(CustomColourScheme.toColour(scheme.getDaySectorHsv()));
+
+    final int sunColour = CustomColourScheme.toColour(scheme.getSunHsv());
+    palette.cartoonSunPaint.setColor(sunColour);
+    palette.realisticSunPaint.setColor(sunColour);
+    palette.realisticSunPaint.setShadowLayer(SOLAR_CORONA_WIDTH * scaleFactor, 0, 0, sunColour);
+
+    palette.nightSectorPaint.setColor(CustomColourScheme.toColour(scheme.getNightSectorHsv()));
+
+    palette.moonLitPaint.setColor(CustomColourScheme.toColour(scheme.getMoonHsv()));
+
+    palette.moonDarkPaint.setColor(Color.BLACK);
+
+    palette.backgroundPaint.setColor(Color.HSVToColor(new float[]{0f, 0f, 0.3f}));
+
+    final int handColour = CustomColourScheme.toColour(scheme.getHandsHsv());
+    palette.hourHandPaint.setColor(handColour);
+    palette.minuteHandPaint.setColor(handColour);
+    palette.handCapPaint.setColor(handColour);
+
+    final int tickColour = CustomColourScheme.toColour(scheme.getTicksHsv());
+    palette.largeTickPaint.setColor(tickColour);
+    palette.smallTickPaint.setColor(tickColour);
+    palette.numberPaint.setColor(tickColour);
+
+    return palette;
+  }
+
+  /**
+   * Creates the palette for a value of the colour scheme setting. If it names a custom scheme that
+   * no longer exists, the muted palette is used instead.
+   *
+   * @param customColourSchemes
+   *     the saved custom schemes, keyed by their values; see {@link CustomColourScheme#loadAll}
+   */
+  static Palette getColourSchemePalette(
+      Context context,
+      float scaleFactor,
+      String colourScheme,
+      Map<String, CustomColourScheme> customColourSchemes
+  ) {
+    if (colourScheme.equals(context.getString(R.string.settings_colour_scheme_value_vivid))) {
+      return getVividPalette(context, scaleFactor);
+    }
+    final CustomColourScheme customColourScheme = customColourSchemes.get(colourScheme);
+    if (customColourScheme != null) {
+      return getCustomPalette(context, scaleFactor, customColourScheme);
+    }
+    return getMutedPalette(context, scaleFactor);
+  }
+
+  /**
+   * Creates a palette for measuring overdraw, not for display. Every paint adds one to the alpha of
+   * each pixel that it touches, so that the finished image holds a count of writes in each pixel.
+   * Anti-aliasing is off, so that edge pixels count as whole writes.
+   */
+  static Palette getOverdrawPalette(Context context, float scaleFactor) {
+    Palette palette = getMutedPalette(context, scaleFactor);
+    palette.name = "overdraw";
+
+    palette.setAntiAlias(false);
+    for (Paint paint : palette.getAllPaints()) {
+      paint.setColor(OVERDRAW_COLOUR);
+      paint.clearShadowLayer();
+      paint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.ADD));
+    }
+
+    return palette;
+  }
+
   void setBurnInProtection(boolean burnInProtection) {
+    this.burnInProtection = burnInProtection;
     cartoonSunPaint.setStyle(burnInProtection ? Paint.Style.STROKE : Paint.Style.FILL);
     realisticSunPaint.setStyle(burnInProtection ? Paint.Style.STROKE : Paint.Style.FILL);
     moonLitPaint.setAlpha(burnInProtection ? 0 : 255);
@@ -204,7 +371,7 @@ class Palette {
   static Palette getAmbientPalette(
       Context context, float scaleFactor
   ) {
-    Palette palette = new Palette(context, scaleFactor);
+    Palette palette = new Palette(context, scaleFactor, "ambient");
 
     palette.backgroundPaint.setColor(Color.BLACK);
 
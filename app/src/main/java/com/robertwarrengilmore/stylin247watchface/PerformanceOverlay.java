@@ -0,0 +1,169 @@
+package com.robertwarrengilmore.stylin247watchface;
+
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.Typeface;
+
+/**
+ * A few lines of live performance figures, drawn over the face when the hidden developer setting
+ * is on. Each line is formatted into a char buffer of its own, and drawn straight from it, so that
+ * updating and drawing the overlay allocates nothing.
+ */
+class PerformanceOverlay {
+
+  /* These are fractions of the face radius. */
+  private static final float TEXT_SIZE = 0.08f;
+  private static final float PADDING = 0.02f;
+  /* These are fractions of the width and height of the face. */
+  private static final float TOP = 0.35f;
+  private static final float SIDE_MARGIN = 0.2f;
+
+  private static final int LINE_LENGTH = 24;
+  private static final char[] UNKNOWN = "-".toCharArray();
+  /* Cached, since values() copies the array each time. */
+  private static final Telemetry.RebuildCause[] REBUILD_CAUSES = Telemetry.RebuildCause.values();
+
+  /**
+   * One line of text: a fixed label, followed by whatever was last written after it.
+   */
+  private static class Line {
+
+    private final char[] chars = new char[LINE_LENGTH];
+    private final int labelLength;
+    private int length;
+
+    private Line(String label) {
+      label.getChars(0, label.length(), chars, 0);
+      labelLength = label.length();
+      length = labelLength;
+    }
+
+    private Line clear() {
+      length = labelLength;
+      return this;
+    }
+
+    private Line append(String text) {
+      final int count = Math.min(text.length(), LINE_LENGTH - length);
+      text.getChars(0, count, chars, length);
+      length += count;
+      return this;
+    }
+
+    private Line append(char[] text) {
+      final int count = Math.min(text.length, LINE_LENGTH - length);
+      System.arraycopy(text, 0, chars, length, count);
+      length += count;
+      return this;
+    }
+
+    private Line append(long number) {
+      if (number < 0) {
+        append(UNKNOWN);
+        return this;
+      }
+      // Write the digits backwards from the end of the number.
+      int digitCount = 1;
+      for (long remainder = number / 10; remainder > 0; remainder /= 10) {
+        digitCount++;
+      }
+      if (length + digitCount > LINE_LENGTH) {
+        return this;
+      }
+      long remainder = number;
+      for (int index = length + digitCount - 1; index >= length; index--) {
+        chars[index] = (char) ('0' + remainder % 10);
+        remainder /= 10;
+      }
+      length += digitCount;
+      return this;
+    }
+  }
+
+  private final Line framesPerSecond = new Line("fps ");
+  private final Line frameTime = new Line("frame ");
+  private final Line rebuildCauses = new Line("rebuild ");
+  private final Line cacheHitRate = new Line("cache hits ");
+  private final Line timerCadence = new Line("timer ");
+  private final Line[] lines = {
+      framesPerSecond, frameTime, rebuildCauses, cacheHitRate, timerCadence,
+  };
+
+  private final float faceRadius;
+  private final Paint textPaint = new Paint();
+  private final Paint backgroundPaint = new Paint();
+
+  PerformanceOverlay(float faceRadius) {
+    this.faceRadius = faceRadius;
+    textPaint.setColor(Color.WHITE);
+    textPaint.setAntiAlias(true);
+    textPaint.setTypeface(Typeface.MONOSPACE);
+    textPaint.setTextAlign(Paint.Align.CENTER);
+    textPaint.setTextSize(TEXT_SIZE * faceRadius);
+    backgroundPaint.setColor(Color.argb(160, 0, 0, 0));
+  }
+
+  /**
+   * Writes the latest figures into the buffers.
+   *
+   * @param framesPerSecond
+   *     the frames drawn over the last second or so
+   * @param frameMicros
+   *     how long the last frame took to draw
+   * @param rebuildCauses
+   *     why the background was last rebuilt, as a mask of {@link Telemetry.RebuildCause}s, or 0 if
+   *     it hasn't been yet
+   * @param cacheHitPercent
+   *     the percentage of frames drawn from the cached background, or -1 if there have been none
+   * @param timerCadenceMillis
+   *     the interval of the update timer, or 0 if it's stopped
+   */
+  void update(
+      int framesPerSecond,
+      long frameMicros,
+      int rebuildCauses,
+      int cacheHitPercent,
+      long timerCadenceMillis
+  ) {
+    this.framesPerSecond.clear().append(framesPerSecond);
+    frameTime.clear().append(frameMicros).append(" µs");
+    this.rebuildCauses.clear();
+    if (rebuildCauses == 0) {
+      this.rebuildCauses.append(UNKNOWN);
+    }
+    boolean first = true;
+    for (Telemetry.RebuildCause cause : REBUILD_CAUSES) {
+      if ((rebuildCauses & cause.getMask()) != 0) {
+        // Any causes that don't fit are cut off.
+        this.rebuildCauses.append(first ? "" : "+").append(cause.name());
+        first = false;
+      }
+    }
+    cacheHitRate.clear().append(cacheHitPercent).append(" %");
+    if (timerCadenceMillis == 0) {
+      timerCadence.clear().append("off");
+    } else {
+      timerCadence.clear().append(timerCadenceMillis).append(" ms");
+    }
+  }
+
+  void draw(Canvas canvas, Rect bounds) {
+    final float lineHeight = textPaint.getFontSpacing();
+    final float padding = PADDING * faceRadius;
+    final float top = bounds.top + TOP * bounds.height();
+    canvas.drawRect(bounds.left + SIDE_MARGIN * bounds.width(),
+        top - padding,
+        bounds.right - SIDE_MARGIN * bounds.width(),
+        top + lines.length * lineHeight + padding,
+        backgroundPaint
+    );
+    final float x = bounds.exactCenterX();
+    float baseline = top - textPaint.ascent();
+    for (Line line : lines) {
+      canvas.drawText(line.chars, 0, line.length, x, baseline, textPaint);
+      baseline += lineHeight;
+    }
+  }
+}
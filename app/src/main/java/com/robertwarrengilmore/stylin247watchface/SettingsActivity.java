@@ -2,7 +2,11 @@ package com.robertwarrengilmore.stylin247watchface;
 
 import android.Manifest;
 import android.content.Intent;
+import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+import android.location.Location;
 import android.net.Uri;
 import android.os.Bundle;
 import android.view.LayoutInflater;
@@ -14,6 +18,7 @@ import androidx.activity.result.ActivityResultLauncher;
 import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.core.app.ActivityCompat;
 import androidx.fragment.app.FragmentActivity;
+import androidx.preference.DropDownPreference;
 import androidx.preference.Preference;
 import androidx.preference.PreferenceFragmentCompat;
 import androidx.preference.PreferenceRecyclerViewAccessibilityDelegate;
@@ -23,14 +28,38 @@ import androidx.wear.widget.WearableRecyclerView;
 
 import com.google.android.wearable.intent.RemoteIntent;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
 /* In order to clear the location permission for manual testing, run `adb pm clear com.robertwarrengilmore.stylin247watchface`. More details: https://stackoverflow.com/a/49544908/662464 */
 
 public class SettingsActivity extends FragmentActivity {
 
+  private static final int DEVELOPER_SETTINGS_TAP_COUNT = 7;
+  /* The drop-downs that edit the user's own colour scheme, in the order of its colours. */
+  private static final int[] CUSTOM_COLOUR_KEYS = {
+      R.string.settings_key_custom_colour_day_sector,
+      R.string.settings_key_custom_colour_night_sector,
+      R.string.settings_key_custom_colour_sun,
+      R.string.settings_key_custom_colour_moon,
+      R.string.settings_key_custom_colour_hands,
+      R.string.settings_key_custom_colour_ticks,
+  };
+  /* Reads the performance log, which shouldn't be read on the main thread. */
+  private static final Executor TELEMETRY_EXECUTOR = Executors.newSingleThreadExecutor();
+
   private final SettingsFragment settingsFragment = new SettingsFragment();
   private ActivityResultLauncher<String[]> requestLocationPermissionLauncher;
+  private ColourSchemePreviews colourSchemePreviews;
+  private String chosenColourScheme;
+  private Map<String, CustomColourScheme> customColourSchemes;
+  private int telemetrySummaryTapCount = 0;
 
   @Override
   protected void onCreate(Bundle savedInstanceState) {
@@ -63,6 +92,185 @@ public class SettingsActivity extends FragmentActivity {
           );
           return true;
         });
+
+    colourSchemePreviews = new ColourSchemePreviews(this);
+    final DropDownPreference colourSchemePreference = settingsFragment.findPreference(getString(R.string.settings_key_colour_scheme));
+    customColourSchemes = CustomColourScheme.loadAll(this,
+        settingsFragment.getPreferenceManager().getSharedPreferences()
+    );
+    addCustomColourSchemes(colourSchemePreference);
+    setUpCustomColourSchemeEditor(colourSchemePreference);
+    chosenColourScheme = colourSchemePreference.getValue();
+    colourSchemePreference.setOnPreferenceChangeListener((preference, newValue) -> {
+      chosenColourScheme = (String) newValue;
+      requestColourSchemePreview(chosenColourScheme);
+      return true;
+    });
+    // Render every scheme up front, so that flipping between them shows the thumbnails at once.
+    for (CharSequence colourScheme : colourSchemePreference.getEntryValues()) {
+      requestColourSchemePreview(colourScheme.toString());
+    }
+
+    settingsFragment
+        .findPreference(getString(R.string.settings_key_telemetry_summary))
+        .setOnPreferenceClickListener((preference) -> {
+          TELEMETRY_EXECUTOR.execute(() -> {
+            final Telemetry.Summary summary = Telemetry.readSummary(getApplicationContext());
+            runOnUiThread(() -> {
+              if (!isDestroyed()) {
+                preference.setSummary(formatTelemetrySummary(summary));
+              }
+            });
+          });
+          countTelemetrySummaryTap();
+          return true;
+        });
+    // Keep the developer settings in view while any of them is on, so that it can be turned off.
+    if (settingsFragment.getPreferenceManager().getSharedPreferences().getBoolean(getString(R.string.settings_key_show_performance_overlay), false)) {
+      settingsFragment.findPreference(getString(R.string.settings_key_show_performance_overlay)).setVisible(true);
+    }
+  }
+
+  /**
+   * Offers the user's own colour schemes after the built-in ones.
+   */
+  private void addCustomColourSchemes(DropDownPreference colourSchemePreference) {
+    final List<CharSequence> entries = new ArrayList<>(Arrays.asList(getResources().getTextArray(R.array.settings_colour_scheme_names)));
+    final List<CharSequence> entryValues = new ArrayList<>(Arrays.asList(getResources().getTextArray(R.array.settings_colour_scheme_values)));
+    for (CustomColourScheme scheme : customColourSchemes.values()) {
+      entries.add(scheme.getName());
+      entryValues.add(scheme.getValue());
+    }
+    colourSchemePreference.setEntries(entries.toArray(new CharSequence[0]));
+    colourSchemePreference.setEntryValues(entryValues.toArray(new CharSequence[0]));
+  }
+
+  /**
+   * Fills the drop-downs that edit the user's own colour scheme with the colours on offer, and
+   * shows the scheme's current colours in them.
+   */
+  private void setUpCustomColourSchemeEditor(DropDownPreference colourSchemePreference) {
+    final CharSequence[] colourNames = getResources().getTextArray(R.array.custom_colour_names);
+    final CharSequence[] colourValues = new CharSequence[CustomColourScheme.SWATCHES.length];
+    for (int swatch = 0; swatch < colourValues.length; swatch++) {
+      colourValues[swatch] = Integer.toHexString(CustomColourScheme.SWATCHES[swatch]);
+    }
+    final int[] colours = getEditableColourScheme().getColours();
+    for (int part = 0; part < CUSTOM_COLOUR_KEYS.length; part++) {
+      final DropDownPreference colourPreference = settingsFragment.findPreference(getString(CUSTOM_COLOUR_KEYS[part]));
+      colourPreference.setEntries(colourNames);
+      colourPreference.setEntryValues(colourValues);
+      colourPreference.setValue(Integer.toHexString(colours[part]));
+      final int editedPart = part;
+      colourPreference.setOnPreferenceChangeListener((preference, newValue) -> {
+        saveEditableColourScheme(editedPart, Integer.parseInt((String) newValue, 16), colourSchemePreference);
+        return true;
+      });
+    }
+  }
+
+  private CustomColourScheme getEditableColourScheme() {
+    final CustomColourScheme defaultScheme = CustomColourScheme.createDefault(CustomColourScheme.EDITABLE_SCHEME_ID, getString(R.string.my_colour_scheme_name));
+    final CustomColourScheme savedScheme = customColourSchemes.get(defaultScheme.getValue());
+    return savedScheme == null ? defaultScheme : savedScheme;
+  }
+
+  /**
+   * Saves a new colour for one part of the user's own scheme, and switches the face to that scheme
+   * so that the change can be seen.
+   */
+  private void saveEditableColourScheme(int part, int colour, DropDownPreference colourSchemePreference) {
+    final int[] colours = getEditableColourScheme().getColours();
+    colours[part] = colour;
+    final CustomColourScheme scheme = CustomColourScheme.fromColours(CustomColourScheme.EDITABLE_SCHEME_ID, getString(R.string.my_colour_scheme_name), colours);
+    final Map<String, CustomColourScheme> schemes = new LinkedHashMap<>(customColourSchemes);
+    schemes.put(scheme.getValue(), scheme);
+    customColourSchemes = Collections.unmodifiableMap(schemes);
+    CustomColourScheme.saveAll(this, settingsFragment.getPreferenceManager().getSharedPreferences(), new ArrayList<>(schemes.values()));
+
+    addCustomColourSchemes(colourSchemePreference);
+    colourSchemePreference.setValue(scheme.getValue());
+    chosenColourScheme = scheme.getValue();
+    requestColourSchemePreview(chosenColourScheme);
+  }
+
+  /**
+   * Reveals the developer settings once the performance log has been tapped enough times.
+   */
+  private void countTelemetrySummaryTap() {
+    final Preference performanceOverlayPreference = settingsFragment.findPreference(getString(R.string.settings_key_show_performance_overlay));
+    if (++telemetrySummaryTapCount == DEVELOPER_SETTINGS_TAP_COUNT && !performanceOverlayPreference.isVisible()) {
+      performanceOverlayPreference.setVisible(true);
+      Toast.makeText(getApplicationContext(), R.string.developer_settings_shown, Toast.LENGTH_SHORT).show();
+    }
+  }
+
+  private void requestColourSchemePreview(String colourScheme) {
+    final SharedPreferences preferences = settingsFragment.getPreferenceManager().getSharedPreferences();
+    colourSchemePreviews.request(colourScheme,
+        customColourSchemes,
+        FaceOptions.fromPreferences(this, preferences),
+        getLocationForPreview(preferences),
+        getResources().getDimensionPixelSize(R.dimen.colour_scheme_preview_size),
+        this::onColourSchemePreviewReady
+    );
+  }
+
+  private void onColourSchemePreviewReady(String colourScheme, Bitmap preview) {
+    if (isDestroyed()) {
+      return;
+    }
+    // Only the chosen scheme is shown. The others are rendered ahead of time.
+    if (colourScheme.equals(chosenColourScheme)) {
+      settingsFragment
+          .findPreference(getString(R.string.settings_key_colour_scheme))
+          .setIcon(new BitmapDrawable(getResources(), preview));
+    }
+  }
+
+  private Location getLocationForPreview(SharedPreferences preferences) {
+    if (!preferences.getBoolean(getString(R.string.settings_key_use_location), false) ||
+        !preferences.contains(getString(R.string.settings_key_last_latitude)) ||
+        !preferences.contains(getString(R.string.settings_key_last_longitude))) {
+      return null;
+    }
+    return FrameRenderer.getLocation(preferences.getFloat(getString(R.string.settings_key_last_latitude), 0),
+        preferences.getFloat(getString(R.string.settings_key_last_longitude), 0)
+    );
+  }
+
+  private String formatTelemetrySummary(Telemetry.Summary summary) {
+    final CharSequence[] causeNames =
+        getResources().getTextArray(R.array.telemetry_rebuild_cause_names);
+    final StringBuilder rebuilds = new StringBuilder();
+    for (Telemetry.RebuildCause cause : Telemetry.RebuildCause.values()) {
+      final long count = summary.getRebuildCounts()[cause.ordinal()];
+      if (count == 0) {
+        continue;
+      }
+      if (rebuilds.length() > 0) {
+        rebuilds.append(", ");
+      }
+      rebuilds.append(causeNames[cause.ordinal()]).append(' ').append(count);
+    }
+    return getString(R.string.telemetry_summary_format,
+        summary.getMinuteCount(),
+        summary.getDrawsPerMinute(),
+        summary.getSkippedFrameCount(),
+        summary.getHandlerWakeupCount(),
+        summary.getPassiveLocationFixCount(),
+        summary.getActiveLocationFixCount(),
+        rebuilds.length() > 0 ? rebuilds : getString(R.string.telemetry_no_rebuilds),
+        summary.getSavedRebuildCount(),
+        formatFrameMicros(summary.getMedianFrameMicros()),
+        formatFrameMicros(summary.getNinetiethPercentileFrameMicros()),
+        formatFrameMicros(summary.getNinetyNinthPercentileFrameMicros())
+    );
+  }
+
+  private static String formatFrameMicros(int micros) {
+    // The last bucket of the histogram has no upper limit.
+    return micros < 0 ? "∞" : (micros / 1000 + " ms");
   }
 
   private void onLocationPermissionAnswer(Map<String, Boolean> values) {
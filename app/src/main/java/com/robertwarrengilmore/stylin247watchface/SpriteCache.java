@@ -0,0 +1,123 @@
+package com.robertwarrengilmore.stylin247watchface;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The sun and moon sprites, shared by every engine and by any thread that draws a background.
+ * Sprites are keyed by the palette's {@link Palette#getSpriteKey() sprite key} and their radius,
+ * so a preview and the live face of the same size and colours draw from the same images.
+ * <p>
+ * Each engine holds a reference to the cache while it's alive. When the last reference is
+ * released, the sprites are dropped. They may also be evicted by the {@link CacheRegistry}, in
+ * which case they're drawn again the next time they're needed.
+ * <p>
+ * The recorded backgrounds leave the sun and moon out, and draw them from this cache each time
+ * they're replayed, so nothing else holds on to the sprites for long. Evicting them frees the
+ * bytes that they were registered with, once any background being rasterised at that moment is
+ * finished.
+ */
+class SpriteCache {
+
+  private static final String TAG = "SpriteCache";
+
+  private static final String SUN_SPRITE_CACHE_NAME = "sun sprites";
+  private static final String MOON_SPRITE_CACHE_NAME = "moon sprites";
+
+  private final CacheRegistry cacheRegistry;
+  /* These are keyed by the name under which they're registered. */
+  private final Map<String, SunSprites> sunSprites = new HashMap<>();
+  private final Map<String, MoonSpriteAtlas> moonSpriteAtlases = new HashMap<>();
+  private final Map<String, Long> registeredByteCounts = new HashMap<>();
+  private int referenceCount = 0;
+
+  SpriteCache(CacheRegistry cacheRegistry) {
+    this.cacheRegistry = cacheRegistry;
+  }
+
+  synchronized void acquire() {
+    referenceCount++;
+  }
+
+  /**
+   * Releases a reference. When there are none left, the sprites are dropped.
+   */
+  void release() {
+    final List<String> cacheNames;
+    synchronized (this) {
+      if (--referenceCount > 0) {
+        return;
+      }
+      cacheNames = new ArrayList<>(registeredByteCounts.keySet());
+      sunSprites.clear();
+      moonSpriteAtlases.clear();
+      registeredByteCounts.clear();
+    }
+    for (String cacheName : cacheNames) {
+      cacheRegistry.remove(cacheName);
+    }
+  }
+
+  synchronized SunSprites getSunSprites(Palette palette, float radius) {
+    final String cacheName = getCacheName(SUN_SPRITE_CACHE_NAME, palette, radius);
+    SunSprites sprites = sunSprites.get(cacheName);
+    if (sprites == null) {
+      sprites = new SunSprites(palette, radius);
+      sunSprites.put(cacheName, sprites);
+    }
+    return sprites;
+  }
+
+  synchronized MoonSpriteAtlas getMoonSpriteAtlas(Palette palette, float radius) {
+    final String cacheName = getCacheName(MOON_SPRITE_CACHE_NAME, palette, radius);
+    MoonSpriteAtlas atlas = moonSpriteAtlases.get(cacheName);
+    if (atlas == null) {
+      atlas = new MoonSpriteAtlas(palette, radius);
+      moonSpriteAtlases.put(cacheName, atlas);
+    }
+    return atlas;
+  }
+
+  /**
+   * Tells the registry how much memory the sprites occupy, after drawing may have added to them.
+   */
+  void updateRegistrations() {
+    final Map<String, Long> byteCounts = new HashMap<>();
+    synchronized (this) {
+      for (Map.Entry<String, SunSprites> entry : sunSprites.entrySet()) {
+        byteCounts.put(entry.getKey(), entry.getValue().getByteCount());
+      }
+      for (Map.Entry<String, MoonSpriteAtlas> entry : moonSpriteAtlases.entrySet()) {
+        byteCounts.put(entry.getKey(), entry.getValue().getByteCount());
+      }
+      // Only the sprites that have grown since they were last registered need registering again.
+      byteCounts.entrySet().removeAll(registeredByteCounts.entrySet());
+      registeredByteCounts.putAll(byteCounts);
+    }
+    // Registering may evict other sprites, so it's done outside the lock, like the evictions.
+    for (Map.Entry<String, Long> entry : byteCounts.entrySet()) {
+      if (BuildConfig.DEBUG) {
+        Log.d(TAG, "The " + entry.getKey() + " now occupy " + entry.getValue() + " bytes.");
+      }
+      cacheRegistry.put(entry.getKey(),
+          CacheRegistry.PRIORITY_SPARE,
+          entry.getValue(),
+          () -> evict(entry.getKey())
+      );
+    }
+  }
+
+  private synchronized void evict(String cacheName) {
+    sunSprites.remove(cacheName);
+    moonSpriteAtlases.remove(cacheName);
+    registeredByteCounts.remove(cacheName);
+  }
+
+  private static String getCacheName(String prefix, Palette palette, float radius) {
+    return prefix + " (" + palette.getSpriteKey() + ", " + radius + " px)";
+  }
+}
@@ -0,0 +1,32 @@
+package com.robertwarrengilmore.stylin247watchface;
+
+import android.graphics.Bitmap;
+import android.graphics.Paint;
+
+/**
+ * Helpers shared by the sprite caches, which pre-draw parts of the face onto transparent bitmaps.
+ */
+final class Sprites {
+
+  private Sprites() {
+  }
+
+  /**
+   * Copies a palette's paint for drawing a sprite. Sprites are drawn onto transparency, where the
+   * palette's SRC_ATOP mode would draw nothing, so the copy has no transfer mode.
+   */
+  static Paint withoutXfermode(Paint paint) {
+    final Paint copy = new Paint(paint);
+    copy.setXfermode(null);
+    return copy;
+  }
+
+  /**
+   * Replaces a finished sprite with an immutable copy, which any thread can draw safely.
+   */
+  static Bitmap toImmutable(Bitmap sprite) {
+    final Bitmap immutableSprite = sprite.copy(Bitmap.Config.ARGB_8888, false);
+    sprite.recycle();
+    return immutableSprite;
+  }
+}
@@ -9,17 +9,23 @@ import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
 import android.graphics.Canvas;
 import android.graphics.Paint;
+import android.graphics.Point;
 import android.graphics.Rect;
 import android.location.Location;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
 import android.os.Message;
+import android.os.SystemClock;
+import android.os.Trace;
 import android.support.wearable.watchface.CanvasWatchFaceService;
 import android.support.wearable.watchface.WatchFaceService;
 import android.support.wearable.watchface.WatchFaceStyle;
+import android.util.Log;
 import android.view.SurfaceHolder;
+import android.view.WindowInsets;
 
+import androidx.annotation.Nullable;
 import androidx.core.app.ActivityCompat;
 import androidx.preference.PreferenceManager;
 
@@ -31,8 +37,12 @@ import com.google.android.gms.location.LocationServices;
 
 import java.lang.ref.WeakReference;
 import java.time.Duration;
-import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.TimeZone;
 
 import static android.Manifest.permission.ACCESS_COARSE_LOCATION;
@@ -41,64 +51,185 @@ import static android.Manifest.permission.ACCESS_FINE_LOCATION;
 public class Stylin247WatchFace extends CanvasWatchFaceService
     implements SharedPreferences.OnSharedPreferenceChangeListener {
 
+  private static final String TAG = "Stylin247WatchFace";
+
   public static final Duration SMOOTH_UPDATE_RATE = Duration.ofSeconds(1).dividedBy(20);
   public static final Duration SECOND_UPDATE_RATE = Duration.ofSeconds(1);
   public static final Duration MINUTE_UPDATE_RATE = Duration.ofMinutes(1);
   private Location location;
+  /*
+   * The time of the last fix, which may be newer than the one saved in the preferences. See
+   * LOCATION_TIME_SAVE_INTERVAL.
+   */
+  private long lastLocationTimeMillis = 0;
   private SharedPreferences preferenceManager;
-  private final Painter painter = new Painter();
-  private Instant backgroundExpiration;
+  private final CacheRegistry cacheRegistry = new CacheRegistry(Long.MAX_VALUE);
+  /* The sprites are shared by the engines, e.g., a preview and the live face. */
+  private final SpriteCache spriteCache = new SpriteCache(cacheRegistry);
+  /* Backgrounds saved across restarts, so that the first frame needn't wait for a rebuild. */
+  private BackgroundDiskCache backgroundDiskCache;
+  /* Everything else that's drawn belongs to one engine. The engines live on the main thread. */
+  private final List<Engine> engines = new ArrayList<>();
+  private int engineCount = 0;
+  private Telemetry telemetry;
+  /* When the service was created, for measuring the time to the first frame. */
+  private long createdUptimeMillis;
+  private boolean deferredStartupBegun = false;
+  private boolean deferredStartupFinished = false;
+  private boolean destroyed = false;
+  private final Handler mainHandler = new Handler(Looper.getMainLooper());
 
   /**
    * Handler message id for updating the time periodically in interactive mode.
    */
   private static final int MSG_UPDATE_TIME = 0;
 
-  public static final LocationRequest LOCATION_REQUEST = new LocationRequest()
-      .setSmallestDisplacement(200_000f)
-      .setPriority(LocationRequest.PRIORITY_LOW_POWER)
-      .setFastestInterval(Duration.ofSeconds(1).toMillis())
+  /**
+   * The offsets, in pixels, that the frame cycles through, one step per minute, in ambient mode on
+   * screens that need burn-in protection.
+   */
+  private static final Point[] BURN_IN_SHIFTS = {
+      new Point(0, 0),
+      new Point(4, 0),
+      new Point(4, 4),
+      new Point(0, 4),
+      new Point(-4, 4),
+      new Point(-4, 0),
+      new Point(-4, -4),
+      new Point(0, -4),
+      new Point(4, -4),
+  };
+  private static final Point NO_SHIFT = new Point(0, 0);
+
+  private static final String COLOUR_SCHEME_PALETTE_CACHE_NAME = "palette";
+  private static final String AMBIENT_PALETTE_CACHE_NAME = "ambient palette";
+
+  /**
+   * Listens for fixes that other apps have already paid for. This never turns on a radio itself.
+   * There's no displacement filter, so that every fix shows that the last location is still fresh.
+   */
+  public static final LocationRequest PASSIVE_LOCATION_REQUEST = new LocationRequest()
+      .setPriority(LocationRequest.PRIORITY_NO_POWER)
+      .setFastestInterval(Duration.ofMinutes(1).toMillis())
       .setInterval(Duration.ofHours(6).toMillis());
-  private final LocationCallback locationCallback = new LocationCallback() {
+  /**
+   * Asks for a single fix, only when no passive fix has arrived for too long.
+   */
+  public static final LocationRequest ACTIVE_LOCATION_REQUEST = new LocationRequest()
+      .setPriority(LocationRequest.PRIORITY_LOW_POWER)
+      .setNumUpdates(1)
+      .setExpirationDuration(Duration.ofMinutes(5).toMillis());
+  /* How far the watch must move before the sunrise and sunset are worth redrawing. */
+  private static final float MINIMUM_LOCATION_CHANGE_METRES = 200_000f;
+  /*
+   * How far the time of the last fix must move on before it's saved again. Passive fixes may come
+   * every minute, but the active request that they put off is hours away, so saving each one would
+   * only wake the disk. After a restart, the active request is at worst this much early.
+   */
+  private static final Duration LOCATION_TIME_SAVE_INTERVAL = Duration.ofHours(1);
+  /* How long to wait before asking again, if an active request doesn't get a fix. */
+  private static final Duration ACTIVE_LOCATION_RETRY_DELAY = Duration.ofHours(1);
+  private final LocationCallback passiveLocationCallback = new LocationCallback() {
     @Override
     public void onLocationResult(LocationResult locationResult) {
       super.onLocationResult(locationResult);
-      if (locationResult.getLastLocation() != null) {
-        preferenceManager.edit().putFloat(getString(R.string.settings_key_last_latitude),
-            (float) locationResult.getLastLocation().getLatitude()
-        ).putFloat(getString(R.string.settings_key_last_longitude),
-            (float) locationResult.getLastLocation().getLongitude()
-        ).commit();
-        updatePreferences();
-      }
-      invalidateCachedBackground();
+      onLocationFix(locationResult.getLastLocation(), false);
+    }
+  };
+  private final LocationCallback activeLocationCallback = new LocationCallback() {
+    @Override
+    public void onLocationResult(LocationResult locationResult) {
+      super.onLocationResult(locationResult);
+      onLocationFix(locationResult.getLastLocation(), true);
     }
   };
+  /*
+   * Handler time stops while the watch sleeps, so this never wakes it. The active request waits
+   * until the watch is awake anyway.
+   */
+  private final Handler locationHandler = new Handler(Looper.getMainLooper());
+  private final Runnable activeLocationRequester = this::requestActiveLocation;
   private FusedLocationProviderClient locationClient;
 
-  private boolean showSecondHand;
-  private boolean animateSecondHandSmoothly;
   private boolean useLocation;
   private String colourScheme;
-  private boolean drawRealisticSun;
-  private boolean showHourNumbers;
-  private boolean angleHourNumbers;
-  private boolean showSingleMinuteTicks;
+  private Map<String, CustomColourScheme> customColourSchemes = Collections.emptyMap();
+  private FaceOptions faceOptions;
+  private FaceOptions ambientFaceOptions;
+  private boolean showPerformanceOverlay;
 
+  /**
+   * Sets up only what's needed to draw the first frame. Everything else waits until that frame has
+   * been drawn; see {@link #beginDeferredStartup}.
+   */
   @Override
   public void onCreate() {
-    super.onCreate();
-    PreferenceManager.setDefaultValues(getApplicationContext(), R.xml.settings, false);
-    preferenceManager = PreferenceManager.getDefaultSharedPreferences(getApplicationContext());
-    turnOffUseLocationIfNoPermission();
-    locationClient = LocationServices.getFusedLocationProviderClient(getApplicationContext());
-    updatePreferences();
-    startLocationUpdates();
+    Trace.beginSection("Stylin247WatchFace.onCreate");
+    try {
+      super.onCreate();
+      createdUptimeMillis = SystemClock.uptimeMillis();
+      cacheRegistry.setBudgetByteCount(
+          getResources().getInteger(R.integer.cache_budget_kilobytes) * 1024L
+      );
+      telemetry = Telemetry.open(getApplicationContext());
+      backgroundDiskCache = new BackgroundDiskCache(getApplicationContext());
+      preferenceManager = PreferenceManager.getDefaultSharedPreferences(getApplicationContext());
+      updatePreferences();
+    } finally {
+      Trace.endSection();
+    }
+  }
+
+  /**
+   * Finishes starting up, once the first frame is on the screen. The settings' defaults are written
+   * and the saved telemetry is read on a background thread. Then the location updates are started
+   * back on the main thread.
+   */
+  private void beginDeferredStartup() {
+    if (deferredStartupBegun) {
+      return;
+    }
+    deferredStartupBegun = true;
+    Log.i(TAG,
+        "Drew the first frame " + (SystemClock.uptimeMillis() - createdUptimeMillis) +
+            " ms after the service was created."
+    );
+    new Thread(() -> {
+      Trace.beginSection("Stylin247WatchFace deferred startup");
+      final Telemetry savedTelemetry;
+      try {
+        PreferenceManager.setDefaultValues(getApplicationContext(), R.xml.settings, false);
+        savedTelemetry = Telemetry.readSaved(getApplicationContext());
+      } finally {
+        Trace.endSection();
+      }
+      mainHandler.post(() -> finishDeferredStartup(savedTelemetry));
+    }, "Stylin247WatchFace startup").start();
+  }
+
+  private void finishDeferredStartup(Telemetry savedTelemetry) {
+    if (destroyed) {
+      return;
+    }
+    Trace.beginSection("Stylin247WatchFace.finishDeferredStartup");
+    try {
+      telemetry.restore(savedTelemetry);
+      turnOffUseLocationIfNoPermission();
+      locationClient = LocationServices.getFusedLocationProviderClient(getApplicationContext());
+      deferredStartupFinished = true;
+      // The defaults may only just have been written.
+      updatePreferences();
+      startLocationUpdates();
+    } finally {
+      Trace.endSection();
+    }
   }
 
   @Override
   public void onDestroy() {
+    destroyed = true;
     stopLocationUpdates();
+    telemetry.flush(System.currentTimeMillis());
     super.onDestroy();
   }
 
@@ -111,27 +242,131 @@ public class Stylin247WatchFace extends CanvasWatchFaceService
 
   @Override
   public void onRebind(Intent intent) {
-    turnOffUseLocationIfNoPermission();
-    updatePreferences();
-    startLocationUpdates();
+    if (deferredStartupFinished) {
+      turnOffUseLocationIfNoPermission();
+      updatePreferences();
+      startLocationUpdates();
+    }
     super.onRebind(intent);
   }
 
+  /**
+   * Gives up render caches when the system is short of memory, so that the process is less likely
+   * to be killed. Whatever is evicted is rebuilt lazily when it's next drawn.
+   */
+  @Override
+  public void onTrimMemory(int level) {
+    super.onTrimMemory(level);
+    cacheRegistry.trimMemory(level);
+  }
+
+  @Override
+  public void onLowMemory() {
+    super.onLowMemory();
+    cacheRegistry.evictAll();
+  }
+
   private void startLocationUpdates() {
-    if (!useLocation) {
+    if (!useLocation || locationClient == null) {
       return;
     }
-    if (ActivityCompat.checkSelfPermission(this, Manifest.permission.ACCESS_FINE_LOCATION) !=
-        PackageManager.PERMISSION_GRANTED &&
-        ActivityCompat.checkSelfPermission(this, Manifest.permission.ACCESS_COARSE_LOCATION) !=
-            PackageManager.PERMISSION_GRANTED) {
+    if (!hasLocationPermission()) {
       return;
     }
-    locationClient.requestLocationUpdates(LOCATION_REQUEST, locationCallback, Looper.myLooper());
+    locationClient.requestLocationUpdates(PASSIVE_LOCATION_REQUEST,
+        passiveLocationCallback,
+        Looper.myLooper()
+    );
+    // The last known fix is free, too, and may be newer than the one we have.
+    locationClient.getLastLocation().addOnSuccessListener(location -> {
+      if (location != null && location.getTime() > getLastLocationTimeMillis()) {
+        onLocationFix(location, false);
+      }
+    });
+    scheduleActiveLocationRequest();
   }
 
   private void stopLocationUpdates() {
-    locationClient.removeLocationUpdates(locationCallback);
+    locationHandler.removeCallbacks(activeLocationRequester);
+    if (locationClient == null) {
+      return;
+    }
+    locationClient.removeLocationUpdates(passiveLocationCallback);
+    locationClient.removeLocationUpdates(activeLocationCallback);
+  }
+
+  private boolean hasLocationPermission() {
+    return ActivityCompat.checkSelfPermission(this, Manifest.permission.ACCESS_FINE_LOCATION) ==
+        PackageManager.PERMISSION_GRANTED ||
+        ActivityCompat.checkSelfPermission(this, Manifest.permission.ACCESS_COARSE_LOCATION) ==
+            PackageManager.PERMISSION_GRANTED;
+  }
+
+  /**
+   * Takes note of a fix. Every fix keeps the last location fresh, but only one far enough from it
+   * replaces it.
+   */
+  private void onLocationFix(@Nullable Location fix, boolean active) {
+    if (fix == null) {
+      return;
+    }
+    telemetry.recordLocationFix(System.currentTimeMillis(), active);
+    final boolean moved =
+        location == null || location.distanceTo(fix) >= MINIMUM_LOCATION_CHANGE_METRES;
+    final boolean saveTime =
+        fix.getTime() - getSavedLocationTimeMillis() >= LOCATION_TIME_SAVE_INTERVAL.toMillis();
+    lastLocationTimeMillis = Math.max(lastLocationTimeMillis, fix.getTime());
+    if (moved || saveTime) {
+      final SharedPreferences.Editor editor = preferenceManager
+          .edit()
+          .putLong(getString(R.string.settings_key_last_location_time), fix.getTime());
+      if (moved) {
+        editor
+            .putFloat(getString(R.string.settings_key_last_latitude), (float) fix.getLatitude())
+            .putFloat(getString(R.string.settings_key_last_longitude), (float) fix.getLongitude());
+      }
+      // The preferences in memory change at once, so updatePreferences sees the new values.
+      editor.apply();
+    }
+    if (moved) {
+      updatePreferences();
+      requestBackgroundRebuilds(Telemetry.RebuildCause.LOCATION);
+    }
+    scheduleActiveLocationRequest();
+  }
+
+  private long getLastLocationTimeMillis() {
+    return Math.max(lastLocationTimeMillis, getSavedLocationTimeMillis());
+  }
+
+  private long getSavedLocationTimeMillis() {
+    return preferenceManager.getLong(getString(R.string.settings_key_last_location_time), 0);
+  }
+
+  /**
+   * Arranges to request a fix of our own once the last one is too old, unless another app gets a
+   * fix for us before then.
+   */
+  private void scheduleActiveLocationRequest() {
+    final long maximumAgeMillis = Duration
+        .ofHours(getResources().getInteger(R.integer.location_maximum_age_hours))
+        .toMillis();
+    final long delayMillis =
+        getLastLocationTimeMillis() + maximumAgeMillis - System.currentTimeMillis();
+    locationHandler.removeCallbacks(activeLocationRequester);
+    locationHandler.postDelayed(activeLocationRequester, Math.max(0, delayMillis));
+  }
+
+  private void requestActiveLocation() {
+    if (!useLocation || !hasLocationPermission()) {
+      return;
+    }
+    locationClient.requestLocationUpdates(ACTIVE_LOCATION_REQUEST,
+        activeLocationCallback,
+        Looper.myLooper()
+    );
+    // A fix reschedules this. Otherwise, e.g., if the request expires, try again later.
+    locationHandler.postDelayed(activeLocationRequester, ACTIVE_LOCATION_RETRY_DELAY.toMillis());
   }
 
   private void turnOffUseLocationIfNoPermission() {
@@ -146,9 +381,13 @@ public class Stylin247WatchFace extends CanvasWatchFaceService
     }
   }
 
-  private void invalidateCachedBackground() {
-    painter.invalidateCachedBackground();
-    backgroundExpiration = Instant.now().plus(Duration.ofHours(1));
+  /**
+   * Asks every engine to rebuild its background, e.g., because the location changed.
+   */
+  private void requestBackgroundRebuilds(Telemetry.RebuildCause cause) {
+    for (Engine engine : engines) {
+      engine.requestBackgroundRebuild(cause);
+    }
   }
 
   @Override
@@ -162,30 +401,43 @@ public class Stylin247WatchFace extends CanvasWatchFaceService
   }
 
   private void updatePreferences() {
-    showSecondHand = preferenceManager.getBoolean(getString(R.string.settings_key_show_second_hand),
-        false
-    );
-    animateSecondHandSmoothly = preferenceManager.getBoolean(getString(R.string.settings_key_animate_second_hand_smoothly),
-        false
-    );
+    final FaceOptions previousFaceOptions = faceOptions;
+    final String previousColourScheme = colourScheme;
+    final Map<String, CustomColourScheme> previousCustomColourSchemes = customColourSchemes;
+    final boolean previousShowPerformanceOverlay = showPerformanceOverlay;
     useLocation = preferenceManager.getBoolean(getString(R.string.settings_key_use_location),
         false
     );
     colourScheme = preferenceManager.getString(getString(R.string.settings_key_colour_scheme),
         getString(R.string.settings_colour_scheme_value_muted)
     );
-    drawRealisticSun = preferenceManager.getBoolean(getString(R.string.settings_key_draw_realistic_sun),
-        false
-    );
-    showHourNumbers = preferenceManager.getBoolean(getString(R.string.settings_key_show_hour_numbers),
-        false
-    );
-    angleHourNumbers = preferenceManager.getBoolean(getString(R.string.settings_key_angle_hour_numbers),
-        false
-    );
-    showSingleMinuteTicks = preferenceManager.getBoolean(getString(R.string.settings_key_show_single_minute_ticks),
+    customColourSchemes = CustomColourScheme.loadAll(this, preferenceManager);
+    if (!customColourSchemes.equals(previousCustomColourSchemes)) {
+      // A scheme's palette is compiled only once, so any that were edited must be compiled again.
+      for (Engine engine : engines) {
+        engine.discardPalettes();
+      }
+    }
+    faceOptions = FaceOptions.fromPreferences(this, preferenceManager);
+    showPerformanceOverlay = preferenceManager.getBoolean(
+        getString(R.string.settings_key_show_performance_overlay),
         false
     );
+    if (showPerformanceOverlay != previousShowPerformanceOverlay) {
+      for (Engine engine : engines) {
+        engine.invalidate();
+      }
+    }
+    ambientFaceOptions = faceOptions
+        .toBuilder()
+        .showSecondHand(false)
+        .animateSecondHandSmoothly(false)
+        .build();
+    if (previousFaceOptions != null && (!faceOptions.equals(previousFaceOptions) ||
+        !colourScheme.equals(previousColourScheme) ||
+        !customColourSchemes.equals(previousCustomColourSchemes))) {
+      requestBackgroundRebuilds(Telemetry.RebuildCause.PREFERENCES);
+    }
     if (preferenceManager.contains(getString(R.string.settings_key_last_latitude)) &&
         preferenceManager.contains(getString(R.string.settings_key_last_longitude))) {
       double latitude = preferenceManager.getFloat(
@@ -227,19 +479,50 @@ public class Stylin247WatchFace extends CanvasWatchFaceService
 
     /* Handler to update the time in interactive mode. */
     private final Handler updateTimeHandler = new EngineHandler(this);
+    /* Distinguishes this engine's caches in the registry from those of the other engines. */
+    private final String cacheNamePrefix = "engine " + engineCount++ + " ";
+    private final Painter painter = new Painter(cacheRegistry,
+        spriteCache,
+        backgroundDiskCache,
+        cacheNamePrefix
+    );
+    private final String ambientPaletteCacheName = cacheNamePrefix + AMBIENT_PALETTE_CACHE_NAME;
+    private long backgroundExpirationMillis;
+    /*
+     * The rebuilds requested since the last frame, as a mask of their causes, and how many requests
+     * there were. They're applied together when the next frame is drawn, so that a burst of them,
+     * e.g., on waking, rebuilds the background only once, and from fully updated state.
+     */
+    private int requestedRebuildCauses = 0;
+    private int rebuildRequestCount = 0;
+    /* Why the background will next be rebuilt, if nothing else is requested before then. */
+    private int appliedRebuildCauses = Telemetry.RebuildCause.EVICTION.getMask();
     private final Paint hourHandPaint = new Paint();
     private final Paint minuteHandPaint = new Paint();
     private final Paint secondHandPaint = new Paint();
 
-    private Palette mutedPalette;
-    private Palette vividPalette;
+    /*
+     * The palettes are created lazily, because the cache registry may evict them. Every colour
+     * scheme that has been shown keeps its palette, so switching back to it is instant.
+     */
+    private final Map<String, Palette> colourSchemePalettes = new HashMap<>();
     private Palette ambientPalette;
-
+    private String activePaletteCacheName;
+    private boolean lowBitAmbient;
+    private boolean burnInProtection;
+    private int burnInShiftIndex = 0;
+
+    /*
+     * The painter only sets and reads the calendar when the background is rebuilt. The hands use
+     * the time source, which is much cheaper to update on every frame.
+     */
     private Calendar calendar;
+    private TimeSource timeSource;
+    private final TimeSource.Time time = new TimeSource.Time();
     private final BroadcastReceiver timeZoneReceiver = new BroadcastReceiver() {
       @Override
       public void onReceive(Context context, Intent intent) {
-        calendar.setTimeZone(TimeZone.getDefault());
+        updateTimeZone();
         invalidate();
       }
     };
@@ -248,45 +531,134 @@ public class Stylin247WatchFace extends CanvasWatchFaceService
     private boolean ambient;
     private float faceRadius;
 
+    /*
+     * What the last frame showed, so that the periodic updates can skip frames that would look
+     * exactly the same. Any other change to the face invalidates it directly.
+     */
+    private final Painter.HandPositions drawnHandPositions = new Painter.HandPositions();
+    private final Painter.HandPositions nextHandPositions = new Painter.HandPositions();
+    private boolean frameDrawn = false;
+    private int drawnBackgroundGeneration;
+    private FaceOptions drawnFaceOptions;
+    private Palette drawnPalette;
+    private int drawnBurnInShiftIndex;
+    private long drawnFrameCount = 0;
+    private long skippedFrameCount = 0;
+
+    /* The figures shown by the developer overlay, which is created only while it's shown. */
+    private PerformanceOverlay performanceOverlay;
+    private int lastRebuildCauses = 0;
+    private long rebuiltFrameCount = 0;
+    private long lastFrameMicros = 0;
+    private long timerCadenceMillis = 0;
+    private long frameRateWindowStartMillis = 0;
+    private int frameRateWindowFrameCount = 0;
+    private int framesPerSecond = 0;
+
+    Engine() {
+      // A hardware canvas is needed to draw the cached background as a hardware bitmap.
+      super(true);
+    }
+
     @Override
     public void onCreate(SurfaceHolder holder) {
-      super.onCreate(holder);
-      invalidateCachedBackground();
+      Trace.beginSection("Stylin247WatchFace.Engine.onCreate");
+      try {
+        super.onCreate(holder);
+        engines.add(this);
+        spriteCache.acquire();
+        requestBackgroundRebuild(Telemetry.RebuildCause.STARTUP);
+
+        setWatchFaceStyle(new WatchFaceStyle.Builder(Stylin247WatchFace.this)
+            .setAcceptsTapEvents(false)
+            .build());
+
+        calendar = Calendar.getInstance();
+        timeSource = new TimeSource(calendar.getTimeZone());
+      } finally {
+        Trace.endSection();
+      }
+    }
 
-      setWatchFaceStyle(new WatchFaceStyle.Builder(Stylin247WatchFace.this)
-          .setAcceptsTapEvents(false)
-          .build());
+    /**
+     * Asks for the background to be rebuilt before the next frame. This only notes the cause. See
+     * {@link #applyRebuildRequests}.
+     */
+    private void requestBackgroundRebuild(Telemetry.RebuildCause cause) {
+      requestedRebuildCauses |= cause.getMask();
+      rebuildRequestCount++;
+    }
+
+    /**
+     * Invalidates the background once for all of the rebuilds requested since the last frame. If
+     * only the surface has changed, only the raster is invalidated, and the painter replays the
+     * recorded background at the surface's new size.
+     */
+    private void applyRebuildRequests(long nowMillis) {
+      final int surfaceMask = Telemetry.RebuildCause.SURFACE.getMask();
+      if (nowMillis > backgroundExpirationMillis && (requestedRebuildCauses & ~surfaceMask) == 0) {
+        requestBackgroundRebuild(Telemetry.RebuildCause.EXPIRY);
+      }
+      if (requestedRebuildCauses == 0) {
+        return;
+      }
+      if (requestedRebuildCauses == surfaceMask) {
+        painter.invalidateCachedBackgroundRaster();
+      } else {
+        painter.invalidateCachedBackground();
+        backgroundExpirationMillis = nowMillis + Duration.ofHours(1).toMillis();
+      }
+      if (rebuildRequestCount > 1) {
+        telemetry.recordSavedRebuilds(nowMillis, rebuildRequestCount - 1);
+      }
+      appliedRebuildCauses = requestedRebuildCauses;
+      requestedRebuildCauses = 0;
+      rebuildRequestCount = 0;
+    }
 
-      calendar = Calendar.getInstance();
+    private void updateTimeZone() {
+      final TimeZone timeZone = TimeZone.getDefault();
+      calendar.setTimeZone(timeZone);
+      timeSource.setTimeZone(timeZone);
     }
 
     @Override
     public void onDestroy() {
       updateTimeHandler.removeMessages(MSG_UPDATE_TIME);
+      engines.remove(this);
+      painter.invalidateCachedBackground();
+      discardPalettes();
+      spriteCache.release();
       super.onDestroy();
     }
 
     @Override
     public void onPropertiesChanged(Bundle properties) {
       super.onPropertiesChanged(properties);
-      final boolean lowBitAmbient = properties.getBoolean(PROPERTY_LOW_BIT_AMBIENT, false);
-      final boolean burnInProtection = properties.getBoolean(PROPERTY_BURN_IN_PROTECTION, false);
-      ambientPalette.setLowBitAmbient(lowBitAmbient);
-      ambientPalette.setBurnInProtection(burnInProtection);
-      invalidateCachedBackground();
+      lowBitAmbient = properties.getBoolean(PROPERTY_LOW_BIT_AMBIENT, false);
+      burnInProtection = properties.getBoolean(PROPERTY_BURN_IN_PROTECTION, false);
+      // Recreate the ambient palette, rather than changing it, so that its sprites are redrawn.
+      ambientPalette = null;
+      cacheRegistry.remove(ambientPaletteCacheName);
+      requestBackgroundRebuild(Telemetry.RebuildCause.PROPERTIES);
     }
 
     @Override
     public void onTimeTick() {
       super.onTimeTick();
-      invalidate();
+      if (ambient && burnInProtection) {
+        burnInShiftIndex = (burnInShiftIndex + 1) % BURN_IN_SHIFTS.length;
+      }
+      telemetry.flushIfDue(System.currentTimeMillis());
+      invalidateIfChanged();
     }
 
     @Override
     public void onAmbientModeChanged(boolean inAmbientMode) {
       super.onAmbientModeChanged(inAmbientMode);
       ambient = inAmbientMode;
-      invalidateCachedBackground();
+      burnInShiftIndex = 0;
+      requestBackgroundRebuild(Telemetry.RebuildCause.AMBIENT_MODE);
 
       /* Check and trigger whether or not timer should be running (only in interactive mode). */
       updateTimer();
@@ -310,7 +682,8 @@ public class Stylin247WatchFace extends CanvasWatchFaceService
     @Override
     public void onSurfaceChanged(SurfaceHolder holder, int format, int width, int height) {
       super.onSurfaceChanged(holder, format, width, height);
-      invalidateCachedBackground();
+      // Only the surface has changed, so the recorded background can be replayed at its new size.
+      requestBackgroundRebuild(Telemetry.RebuildCause.SURFACE);
 
       /*
        * Find the radius of the screen, and ignore the window insets, so that, on round watches with
@@ -318,7 +691,17 @@ public class Stylin247WatchFace extends CanvasWatchFaceService
        */
       faceRadius = width / 2f;
 
-      createPalettes();
+      discardPalettes();
+      performanceOverlay = null;
+    }
+
+    @Override
+    public void onApplyWindowInsets(WindowInsets insets) {
+      super.onApplyWindowInsets(insets);
+      if (insets.isRound() != painter.isRoundFace()) {
+        painter.setRoundFace(insets.isRound());
+        requestBackgroundRebuild(Telemetry.RebuildCause.SHAPE);
+      }
     }
 
     /**
@@ -338,13 +721,100 @@ public class Stylin247WatchFace extends CanvasWatchFaceService
           // The user has completed the tap gesture.
           break;
       }
+      invalidateIfChanged();
+    }
+
+    /**
+     * Invalidates the face, unless the frame would look just the same as the last one, e.g.,
+     * because only the hour hand has moved, and by less than a pixel.
+     */
+    private void invalidateIfChanged() {
+      final long nowMillis = System.currentTimeMillis();
+      final FaceOptions options = ambient ? ambientFaceOptions : faceOptions;
+      if (frameDrawn &&
+          requestedRebuildCauses == 0 &&
+          nowMillis <= backgroundExpirationMillis &&
+          painter.getBackgroundGeneration() == drawnBackgroundGeneration &&
+          options == drawnFaceOptions &&
+          getCachedPalette() == drawnPalette &&
+          burnInShiftIndex == drawnBurnInShiftIndex) {
+        timeSource.getTime(nowMillis, time);
+        Painter.getHandPositions(faceRadius, time, options, nextHandPositions);
+        if (nextHandPositions.equals(drawnHandPositions)) {
+          skippedFrameCount++;
+          telemetry.recordSkippedFrame(nowMillis);
+          return;
+        }
+      }
       invalidate();
     }
 
-    private void createPalettes() {
-      mutedPalette = Palette.getMutedPalette(getApplicationContext(), faceRadius);
-      vividPalette = Palette.getVividPalette(getApplicationContext(), faceRadius);
-      ambientPalette = Palette.getAmbientPalette(getApplicationContext(), faceRadius);
+    /**
+     * Drops the palettes, e.g., because they were sized for a different surface. They will be
+     * created again as they are needed.
+     */
+    private void discardPalettes() {
+      for (String colourScheme : colourSchemePalettes.keySet()) {
+        cacheRegistry.remove(getColourSchemePaletteCacheName(colourScheme));
+      }
+      colourSchemePalettes.clear();
+      ambientPalette = null;
+      cacheRegistry.remove(ambientPaletteCacheName);
+    }
+
+    private String getColourSchemePaletteCacheName(String colourScheme) {
+      return cacheNamePrefix + COLOUR_SCHEME_PALETTE_CACHE_NAME + " (" + colourScheme + ")";
+    }
+
+    private Palette getColourSchemePalette(String colourScheme) {
+      Palette palette = colourSchemePalettes.get(colourScheme);
+      if (palette == null) {
+        palette = Palette.getColourSchemePalette(getApplicationContext(),
+            faceRadius,
+            colourScheme,
+            customColourSchemes
+        );
+        colourSchemePalettes.put(colourScheme, palette);
+        registerPalette(getColourSchemePaletteCacheName(colourScheme),
+            () -> colourSchemePalettes.remove(colourScheme)
+        );
+      }
+      return palette;
+    }
+
+    private Palette getAmbientPalette() {
+      if (ambientPalette == null) {
+        ambientPalette = Palette.getAmbientPalette(getApplicationContext(), faceRadius);
+        ambientPalette.setLowBitAmbient(lowBitAmbient);
+        ambientPalette.setBurnInProtection(burnInProtection);
+        registerPalette(ambientPaletteCacheName, () -> ambientPalette = null);
+      }
+      return ambientPalette;
+    }
+
+    private void registerPalette(String cacheName, Runnable evictor) {
+      cacheRegistry.put(cacheName,
+          cacheName.equals(activePaletteCacheName) ?
+          CacheRegistry.PRIORITY_ACTIVE :
+          CacheRegistry.PRIORITY_INACTIVE,
+          Palette.ESTIMATED_BYTE_COUNT,
+          evictor
+      );
+    }
+
+    /**
+     * Marks the palette on the screen as active in the cache registry, so that the other palettes
+     * are evicted before it.
+     */
+    private void setActivePalette(String cacheName) {
+      if (cacheName.equals(activePaletteCacheName)) {
+        return;
+      }
+      if (activePaletteCacheName != null) {
+        cacheRegistry.setPriority(activePaletteCacheName, CacheRegistry.PRIORITY_INACTIVE);
+      }
+      activePaletteCacheName = cacheName;
+      cacheRegistry.setPriority(cacheName, CacheRegistry.PRIORITY_ACTIVE);
     }
 
     Location getLocationIfNeeded() {
@@ -356,35 +826,104 @@ public class Stylin247WatchFace extends CanvasWatchFaceService
 
     @Override
     public void onDraw(Canvas canvas, Rect bounds) {
-      Instant now = Instant.now();
-
-      if (now.isAfter(backgroundExpiration)) {
-        invalidateCachedBackground();
+      Trace.beginSection("Stylin247WatchFace.Engine.onDraw");
+      try {
+        drawFrame(canvas, bounds);
+      } finally {
+        Trace.endSection();
       }
+      beginDeferredStartup();
+    }
 
-      calendar.setTimeInMillis(now.toEpochMilli());
+    private void drawFrame(Canvas canvas, Rect bounds) {
+      final long nowMillis = System.currentTimeMillis();
 
-      Palette palette;
-      if (ambient) {
-        palette = ambientPalette;
-      } else if (colourScheme.equals(getString(R.string.settings_colour_scheme_value_vivid))) {
-        palette = vividPalette;
-      } else {
-        palette = mutedPalette;
-      }
+      applyRebuildRequests(nowMillis);
+
+      timeSource.getTime(nowMillis, time);
+
+      final Palette palette = getPalette();
+      final FaceOptions options = ambient ? ambientFaceOptions : faceOptions;
 
+      painter.setPerformanceOverlay(getPerformanceOverlayIfShown(nowMillis));
+      final long backgroundBuildCount = painter.getBackgroundBuildCount();
+      final long drawStartNanos = System.nanoTime();
       painter.draw(canvas,
           bounds,
           palette,
           calendar,
+          time,
           getLocationIfNeeded(),
-          drawRealisticSun,
-          showHourNumbers,
-          angleHourNumbers,
-          showSingleMinuteTicks,
-          showSecondHand && !ambient,
-          showSecondHand && animateSecondHandSmoothly && !ambient
+          options,
+          (ambient && burnInProtection) ? BURN_IN_SHIFTS[burnInShiftIndex] : NO_SHIFT
       );
+      final long drawNanos = System.nanoTime() - drawStartNanos;
+      telemetry.recordDraw(nowMillis, drawNanos);
+      lastFrameMicros = drawNanos / 1000;
+      if (painter.getBackgroundBuildCount() != backgroundBuildCount) {
+        telemetry.recordBackgroundRebuild(nowMillis, appliedRebuildCauses);
+        lastRebuildCauses = appliedRebuildCauses;
+        rebuiltFrameCount++;
+        // Unless something else is requested first, the next rebuild will be due to an eviction.
+        appliedRebuildCauses = Telemetry.RebuildCause.EVICTION.getMask();
+      }
+
+      Painter.getHandPositions(faceRadius, time, options, drawnHandPositions);
+      drawnBackgroundGeneration = painter.getBackgroundGeneration();
+      drawnFaceOptions = options;
+      drawnPalette = palette;
+      drawnBurnInShiftIndex = burnInShiftIndex;
+      frameDrawn = true;
+      drawnFrameCount++;
+    }
+
+    /**
+     * Brings the developer overlay up to date, if it's turned on and the face is interactive. The
+     * frame time and rebuild causes it shows are those of the previous frame.
+     */
+    private PerformanceOverlay getPerformanceOverlayIfShown(long nowMillis) {
+      if (!showPerformanceOverlay || ambient) {
+        return null;
+      }
+      if (performanceOverlay == null) {
+        performanceOverlay = new PerformanceOverlay(faceRadius);
+      }
+      frameRateWindowFrameCount++;
+      final long frameRateWindowMillis = nowMillis - frameRateWindowStartMillis;
+      if (frameRateWindowMillis >= 1_000) {
+        framesPerSecond = (int) (frameRateWindowFrameCount * 1_000L / frameRateWindowMillis);
+        frameRateWindowStartMillis = nowMillis;
+        frameRateWindowFrameCount = 0;
+      }
+      performanceOverlay.update(framesPerSecond,
+          lastFrameMicros,
+          lastRebuildCauses,
+          drawnFrameCount == 0 ?
+          -1 :
+          (int) ((drawnFrameCount - rebuiltFrameCount) * 100 / drawnFrameCount),
+          timerCadenceMillis
+      );
+      return performanceOverlay;
+    }
+
+    /**
+     * Returns the palette for the current mode and colour scheme, and marks it as active.
+     */
+    private Palette getPalette() {
+      if (ambient) {
+        setActivePalette(ambientPaletteCacheName);
+        return getAmbientPalette();
+      }
+      setActivePalette(getColourSchemePaletteCacheName(colourScheme));
+      return getColourSchemePalette(colourScheme);
+    }
+
+    /**
+     * Returns the palette for the current mode and colour scheme if it already exists, or null.
+     * Unlike {@link #getPalette}, this neither creates nor registers anything.
+     */
+    private Palette getCachedPalette() {
+      return ambient ? ambientPalette : colourSchemePalettes.get(colourScheme);
     }
 
     @Override
@@ -394,11 +933,18 @@ public class Stylin247WatchFace extends CanvasWatchFaceService
       if (visible) {
         registerReceiver();
         /* Update time zone in case it changed while we weren"t visible. */
-        calendar.setTimeZone(TimeZone.getDefault());
+        updateTimeZone();
         updatePreferences();
         invalidate();
       } else {
         unregisterReceiver();
+        telemetry.flushIfDue(System.currentTimeMillis());
+        if (BuildConfig.DEBUG) {
+          Log.d(TAG,
+              "Drew " + drawnFrameCount + " frames and skipped " + skippedFrameCount +
+                  " that wouldn't have changed."
+          );
+        }
       }
 
       /* Check and trigger whether or not timer should be running (only in active mode). */
@@ -429,6 +975,8 @@ public class Stylin247WatchFace extends CanvasWatchFaceService
       updateTimeHandler.removeMessages(MSG_UPDATE_TIME);
       if (shouldTimerBeRunning()) {
         updateTimeHandler.sendEmptyMessage(MSG_UPDATE_TIME);
+      } else {
+        timerCadenceMillis = 0;
       }
     }
 
@@ -444,11 +992,12 @@ public class Stylin247WatchFace extends CanvasWatchFaceService
      * Handle updating the time periodically in interactive mode.
      */
     private void handleUpdateTimeMessage() {
-      invalidate();
+      telemetry.recordHandlerWakeup(System.currentTimeMillis());
+      invalidateIfChanged();
       if (shouldTimerBeRunning()) {
         Duration updateRate;
-        if (showSecondHand) {
-          if (animateSecondHandSmoothly) {
+        if (faceOptions.isShowSecondHand()) {
+          if (faceOptions.isAnimateSecondHandSmoothly()) {
             updateRate = SMOOTH_UPDATE_RATE;
           } else {
             updateRate = SECOND_UPDATE_RATE;
@@ -457,6 +1006,7 @@ public class Stylin247WatchFace extends CanvasWatchFaceService
           updateRate = MINUTE_UPDATE_RATE;
         }
         long updateRateMs = (updateRate.getSeconds() * 1_000) + (updateRate.getNano() / 1_000_000);
+        timerCadenceMillis = updateRateMs;
         long timeMs = System.currentTimeMillis();
         long delayMs = updateRateMs - (timeMs % updateRateMs);
         updateTimeHandler.sendEmptyMessageDelayed(MSG_UPDATE_TIME, delayMs);
@@ -0,0 +1,91 @@
+package com.robertwarrengilmore.stylin247watchface;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.PointF;
+
+/**
+ * Pre-drawn images of the cartoon and realistic suns for one palette and radius. The cartoon sun's
+ * rays take a dozen paths to draw, and the realistic sun's blurred corona is expensive to render in
+ * software, so each is drawn only the first time it's needed.
+ * <p>
+ * The sprites follow the palette's paints, so a low-bit ambient palette, which has no corona, gets
+ * a realistic sun without one.
+ * <p>
+ * The sprites are shared by every engine through the {@link SpriteCache}, so they may be drawn on
+ * more than one thread. Each sprite is immutable once it's drawn.
+ */
+class SunSprites {
+
+  private final float radius;
+  private final Paint cartoonPaint;
+  private final Paint realisticPaint;
+  private final int spriteSize;
+  private Bitmap cartoonSprite = null;
+  private Bitmap realisticSprite = null;
+
+  SunSprites(Palette palette, float radius) {
+    this.radius = radius;
+    cartoonPaint = Sprites.withoutXfermode(palette.getCartoonSunPaint());
+    realisticPaint = Sprites.withoutXfermode(palette.getRealisticSunPaint());
+    // Leave room for the rays, or for the corona, which blurs out to about twice its width.
+    final float extent = Math.max(Painter.getSunRayTipRadius(radius),
+        radius + 2 * palette.getSolarCoronaWidth()
+    );
+    final float strokeWidth = Math.max(cartoonPaint.getStrokeWidth(),
+        realisticPaint.getStrokeWidth()
+    );
+    spriteSize = (int) Math.ceil(2 * (extent + strokeWidth / 2 + 1));
+  }
+
+  /**
+   * Returns how much memory the sprites drawn so far occupy.
+   */
+  synchronized long getByteCount() {
+    long byteCount = 0;
+    if (cartoonSprite != null) {
+      byteCount += cartoonSprite.getAllocationByteCount();
+    }
+    if (realisticSprite != null) {
+      byteCount += realisticSprite.getAllocationByteCount();
+    }
+    return byteCount;
+  }
+
+  /**
+   * Draws the sun centred on the given point, compositing it with the given paint.
+   */
+  void draw(Canvas canvas, PointF centre, boolean drawRealisticSun, Paint spritePaint) {
+    canvas.drawBitmap(getSprite(drawRealisticSun),
+        centre.x - spriteSize / 2f,
+        centre.y - spriteSize / 2f,
+        spritePaint
+    );
+  }
+
+  private synchronized Bitmap getSprite(boolean realistic) {
+    if (realistic) {
+      if (realisticSprite == null) {
+        realisticSprite = createSprite(true);
+      }
+      return realisticSprite;
+    }
+    if (cartoonSprite == null) {
+      cartoonSprite = createSprite(false);
+    }
+    return cartoonSprite;
+  }
+
+  private Bitmap createSprite(boolean realistic) {
+    final Bitmap sprite = Bitmap.createBitmap(spriteSize, spriteSize, Bitmap.Config.ARGB_8888);
+    Painter.drawSun(new Canvas(sprite),
+        new PointF(spriteSize / 2f, spriteSize / 2f),
+        radius,
+        realistic,
+        cartoonPaint,
+        realisticPaint
+    );
+    return Sprites.toImmutable(sprite);
+  }
+}
@@ -0,0 +1,406 @@
+package com.robertwarrengilmore.stylin247watchface;
+
+import android.content.Context;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+import lombok.Value;
+
+/**
+ * Records what the watch face does with its time, minute by minute, so that battery complaints can
+ * be diagnosed from real wrists: draws, skipped frames, background rebuilds and their causes,
+ * handler wakeups, passive and active location fixes, and a histogram of frame times.
+ * <p>
+ * The last day's minutes are kept in a fixed-size ring buffer of counters, which is written to a
+ * small binary file at most once an hour. The file can be summarised by the settings activity, or
+ * pulled from the watch with {@code adb}.
+ * <p>
+ * Recording isn't thread-safe. It's meant to be done on the watch face's main thread.
+ */
+class Telemetry {
+
+  private static final String TAG = "Telemetry";
+
+  private static final String FILE_NAME = "telemetry.bin";
+  private static final int FILE_MAGIC = 0x53323437;
+  private static final int FILE_VERSION = 4;
+
+  /**
+   * The number of minutes in the ring buffer.
+   */
+  static final int MINUTE_COUNT = 24 * 60;
+  private static final long MILLIS_PER_MINUTE = Duration.ofMinutes(1).toMillis();
+  private static final long FLUSH_INTERVAL_MILLIS = Duration.ofHours(1).toMillis();
+
+  /**
+   * Why the background had to be built again. The settings name the causes in the same order by
+   * {@code R.array.telemetry_rebuild_cause_names}.
+   */
+  enum RebuildCause {
+    /** The face was just created. */
+    STARTUP,
+    /** The background had gone stale, e.g., because the sun had moved. */
+    EXPIRY,
+    /** A new location arrived. */
+    LOCATION,
+    /** The face entered or left ambient mode. */
+    AMBIENT_MODE,
+    /** The screen's properties, e.g., low-bit ambient, changed. */
+    PROPERTIES,
+    /** The surface changed size. */
+    SURFACE,
+    /** The screen turned out to be round, or not. */
+    SHAPE,
+    /** The settings changed. */
+    PREFERENCES,
+    /** The background was evicted from the cache to save memory. */
+    EVICTION;
+
+    /**
+     * Returns this cause's bit in a set of causes packed into an int.
+     */
+    int getMask() {
+      return 1 << ordinal();
+    }
+  }
+
+  /**
+   * The upper limits of the frame time histogram's buckets, in microseconds. The last bucket has no
+   * upper limit.
+   */
+  private static final int[] FRAME_TIME_BUCKET_LIMITS_MICROS = {
+      1_000, 2_000, 4_000, 8_000, 16_000, 32_000, 64_000,
+  };
+  private static final int FRAME_TIME_BUCKET_COUNT = FRAME_TIME_BUCKET_LIMITS_MICROS.length + 1;
+
+  /* The counters of each minute, in the order they're stored. */
+  private static final int DRAWS = 0;
+  private static final int SKIPPED_FRAMES = 1;
+  private static final int HANDLER_WAKEUPS = 2;
+  private static final int PASSIVE_LOCATION_FIXES = 3;
+  private static final int ACTIVE_LOCATION_FIXES = 4;
+  private static final int SAVED_REBUILDS = 5;
+  private static final int REBUILDS = 6;
+  private static final int FRAME_TIMES = REBUILDS + RebuildCause.values().length;
+  private static final int COUNTER_COUNT = FRAME_TIMES + FRAME_TIME_BUCKET_COUNT;
+
+  private static final int HEADER_BYTE_COUNT = 4 * Integer.BYTES;
+  private static final int RECORD_BYTE_COUNT = Integer.BYTES + COUNTER_COUNT * Character.BYTES;
+
+  private static final Executor FLUSH_EXECUTOR = Executors.newSingleThreadExecutor();
+
+  private final AtomicFile file;
+  /* The minute since the epoch that each slot holds, or -1 if it's empty. */
+  private final int[] minutes = new int[MINUTE_COUNT];
+  /* The counters, saturating at 65535 per minute. */
+  private final char[] counters = new char[MINUTE_COUNT * COUNTER_COUNT];
+  private long lastFlushMillis;
+
+  private Telemetry(AtomicFile file) {
+    this.file = file;
+    Arrays.fill(minutes, -1);
+  }
+
+  /**
+   * Starts recording, without reading what's been written so far. That can be read later, off the
+   * main thread, with {@link #readSaved}, and merged with {@link #restore}.
+   */
+  static Telemetry open(Context context) {
+    final Telemetry telemetry = new Telemetry(getFile(context));
+    telemetry.lastFlushMillis = System.currentTimeMillis();
+    return telemetry;
+  }
+
+  /**
+   * Reads the telemetry that's been written so far. This does I/O, so it shouldn't be called on the
+   * main thread.
+   */
+  static Telemetry readSaved(Context context) {
+    final Telemetry telemetry = new Telemetry(getFile(context));
+    telemetry.read();
+    return telemetry;
+  }
+
+  /**
+   * Carries on from the saved telemetry, keeping whatever has been recorded since this was opened.
+   */
+  void restore(Telemetry saved) {
+    for (int slot = 0; slot < MINUTE_COUNT; slot++) {
+      if (minutes[slot] >= 0 || saved.minutes[slot] < 0) {
+        continue;
+      }
+      minutes[slot] = saved.minutes[slot];
+      System.arraycopy(saved.counters,
+          slot * COUNTER_COUNT,
+          counters,
+          slot * COUNTER_COUNT,
+          COUNTER_COUNT
+      );
+    }
+  }
+
+  private static AtomicFile getFile(Context context) {
+    return new AtomicFile(new File(context.getFilesDir(), FILE_NAME));
+  }
+
+  void recordDraw(long nowMillis, long frameNanos) {
+    final int offset = getRecordOffset(nowMillis);
+    increment(offset + DRAWS);
+    final long frameMicros = frameNanos / 1_000;
+    int bucket = 0;
+    while (bucket < FRAME_TIME_BUCKET_LIMITS_MICROS.length &&
+        frameMicros >= FRAME_TIME_BUCKET_LIMITS_MICROS[bucket]) {
+      bucket++;
+    }
+    increment(offset + FRAME_TIMES + bucket);
+  }
+
+  void recordSkippedFrame(long nowMillis) {
+    increment(getRecordOffset(nowMillis) + SKIPPED_FRAMES);
+  }
+
+  void recordHandlerWakeup(long nowMillis) {
+    increment(getRecordOffset(nowMillis) + HANDLER_WAKEUPS);
+  }
+
+  /**
+   * Records a location fix: an active one that the face requested, or a passive one that another
+   * app paid for.
+   */
+  void recordLocationFix(long nowMillis, boolean active) {
+    final int counter = active ? ACTIVE_LOCATION_FIXES : PASSIVE_LOCATION_FIXES;
+    increment(getRecordOffset(nowMillis) + counter);
+  }
+
+  /**
+   * Records a background rebuild, under each of the causes in the given mask; see
+   * {@link RebuildCause#getMask}.
+   */
+  void recordBackgroundRebuild(long nowMillis, int causes) {
+    final int offset = getRecordOffset(nowMillis);
+    for (RebuildCause cause : RebuildCause.values()) {
+      if ((causes & cause.getMask()) != 0) {
+        increment(offset + REBUILDS + cause.ordinal());
+      }
+    }
+  }
+
+  /**
+   * Records rebuild requests that were folded into another rebuild, rather than each causing one.
+   */
+  void recordSavedRebuilds(long nowMillis, int count) {
+    final int index = getRecordOffset(nowMillis) + SAVED_REBUILDS;
+    counters[index] = (char) Math.min(Character.MAX_VALUE, counters[index] + count);
+  }
+
+  /**
+   * Writes the ring buffer to the file, on a background thread, if it hasn't been written in the
+   * last hour.
+   */
+  void flushIfDue(long nowMillis) {
+    if (nowMillis - lastFlushMillis < FLUSH_INTERVAL_MILLIS) {
+      return;
+    }
+    flush(nowMillis);
+  }
+
+  /**
+   * Writes the ring buffer to the file, on a background thread.
+   */
+  void flush(long nowMillis) {
+    lastFlushMillis = nowMillis;
+    final byte[] snapshot = toBytes();
+    FLUSH_EXECUTOR.execute(() -> write(snapshot));
+  }
+
+  private int getRecordOffset(long nowMillis) {
+    final int minute = (int) (nowMillis / MILLIS_PER_MINUTE);
+    final int slot = minute % MINUTE_COUNT;
+    if (minutes[slot] != minute) {
+      minutes[slot] = minute;
+      Arrays.fill(counters, slot * COUNTER_COUNT, (slot + 1) * COUNTER_COUNT, (char) 0);
+    }
+    return slot * COUNTER_COUNT;
+  }
+
+  private void increment(int index) {
+    if (counters[index] != Character.MAX_VALUE) {
+      counters[index]++;
+    }
+  }
+
+  private byte[] toBytes() {
+    int recordCount = 0;
+    for (int minute : minutes) {
+      if (minute >= 0) {
+        recordCount++;
+      }
+    }
+    final ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTE_COUNT +
+        recordCount * RECORD_BYTE_COUNT);
+    buffer.putInt(FILE_MAGIC);
+    buffer.putInt(FILE_VERSION);
+    buffer.putInt(COUNTER_COUNT);
+    buffer.putInt(recordCount);
+    for (int slot = 0; slot < MINUTE_COUNT; slot++) {
+      if (minutes[slot] < 0) {
+        continue;
+      }
+      buffer.putInt(minutes[slot]);
+      for (int counter = 0; counter < COUNTER_COUNT; counter++) {
+        buffer.putChar(counters[slot * COUNTER_COUNT + counter]);
+      }
+    }
+    return buffer.array();
+  }
+
+  private void write(byte[] bytes) {
+    FileOutputStream outputStream = null;
+    try {
+      outputStream = file.startWrite();
+      outputStream.write(bytes);
+      file.finishWrite(outputStream);
+    } catch (IOException e) {
+      Log.w(TAG, "Could not write the telemetry.", e);
+      if (outputStream != null) {
+        file.failWrite(outputStream);
+      }
+    }
+  }
+
+  private void read() {
+    try (DataInputStream inputStream = new DataInputStream(
+        new BufferedInputStream(file.openRead()))) {
+      if (inputStream.readInt() != FILE_MAGIC || inputStream.readInt() != FILE_VERSION ||
+          inputStream.readInt() != COUNTER_COUNT) {
+        Log.w(TAG, "Ignoring telemetry in an unknown format.");
+        return;
+      }
+      final int recordCount = inputStream.readInt();
+      if (recordCount < 0 || recordCount > MINUTE_COUNT) {
+        Log.w(TAG, "Ignoring telemetry with " + recordCount + " records.");
+        return;
+      }
+      for (int record = 0; record < recordCount; record++) {
+        final int minute = inputStream.readInt();
+        if (minute < 0) {
+          Log.w(TAG, "Ignoring the telemetry from a record for minute " + minute + " onwards.");
+          return;
+        }
+        final int slot = minute % MINUTE_COUNT;
+        minutes[slot] = minute;
+        for (int counter = 0; counter < COUNTER_COUNT; counter++) {
+          counters[slot * COUNTER_COUNT + counter] = inputStream.readChar();
+        }
+      }
+    } catch (FileNotFoundException e) {
+      // Nothing has been recorded yet.
+    } catch (IOException e) {
+      Log.w(TAG, "Could not read the telemetry.", e);
+    }
+  }
+
+  /**
+   * Sums up everything recorded, as of the last time it was written to the file.
+   */
+  static Summary readSummary(Context context) {
+    return readSaved(context).getSummary();
+  }
+
+  @Value
+  static class Summary {
+
+    int minuteCount;
+    long drawCount;
+    long skippedFrameCount;
+    long handlerWakeupCount;
+    long passiveLocationFixCount;
+    long activeLocationFixCount;
+    /**
+     * The number of rebuild requests that were folded into another rebuild.
+     */
+    long savedRebuildCount;
+    /**
+     * The number of background rebuilds, indexed by the ordinal of their {@link RebuildCause}. A
+     * rebuild with several causes is counted under each of them.
+     */
+    long[] rebuildCounts;
+    /**
+     * The frame times, in microseconds, that half, nine in ten and ninety-nine in a hundred frames
+     * took no longer than, rounded up to the histogram's buckets, or -1 for the unbounded bucket.
+     */
+    int medianFrameMicros;
+    int ninetiethPercentileFrameMicros;
+    int ninetyNinthPercentileFrameMicros;
+
+    double getDrawsPerMinute() {
+      return minuteCount == 0 ? 0 : (double) drawCount / minuteCount;
+    }
+  }
+
+  private Summary getSummary() {
+    // Slots that haven't been overwritten since the watch was last off may hold older days.
+    int latestMinute = -1;
+    for (int minute : minutes) {
+      latestMinute = Math.max(latestMinute, minute);
+    }
+    int minuteCount = 0;
+    final long[] totals = new long[COUNTER_COUNT];
+    for (int slot = 0; slot < MINUTE_COUNT; slot++) {
+      if (minutes[slot] < 0 || minutes[slot] <= latestMinute - MINUTE_COUNT) {
+        continue;
+      }
+      minuteCount++;
+      for (int counter = 0; counter < COUNTER_COUNT; counter++) {
+        totals[counter] += counters[slot * COUNTER_COUNT + counter];
+      }
+    }
+    final long[] rebuildCounts = new long[RebuildCause.values().length];
+    System.arraycopy(totals, REBUILDS, rebuildCounts, 0, rebuildCounts.length);
+    final long[] frameTimes = new long[FRAME_TIME_BUCKET_COUNT];
+    System.arraycopy(totals, FRAME_TIMES, frameTimes, 0, frameTimes.length);
+    return new Summary(minuteCount,
+        totals[DRAWS],
+        totals[SKIPPED_FRAMES],
+        totals[HANDLER_WAKEUPS],
+        totals[PASSIVE_LOCATION_FIXES],
+        totals[ACTIVE_LOCATION_FIXES],
+        totals[SAVED_REBUILDS],
+        rebuildCounts,
+        getPercentileMicros(frameTimes, 0.5),
+        getPercentileMicros(frameTimes, 0.9),
+        getPercentileMicros(frameTimes, 0.99)
+    );
+  }
+
+  private static int getPercentileMicros(long[] histogram, double fraction) {
+    long total = 0;
+    for (long count : histogram) {
+      total += count;
+    }
+    if (total == 0) {
+      return 0;
+    }
+    final long rank = (long) Math.ceil(fraction * total);
+    long cumulative = 0;
+    for (int bucket = 0; bucket < FRAME_TIME_BUCKET_LIMITS_MICROS.length; bucket++) {
+      cumulative += histogram[bucket];
+      if (cumulative >= rank) {
+        return FRAME_TIME_BUCKET_LIMITS_MICROS[bucket];
+      }
+    }
+    return -1;
+  }
+}
@@ -0,0 +1,102 @@
+package com.robertwarrengilmore.stylin247watchface;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.TimeZone;
+
+import lombok.Getter;
+
+/**
+ * Breaks instants down into local time fields quickly enough to do it on every frame.
+ * <p>
+ * Unlike {@link java.util.Calendar}, this doesn't recompute every field whenever the time changes.
+ * The zone offset is cached until the next transition (e.g., the start or end of daylight saving
+ * time), the day of the year is cached until the date changes, and everything else is plain
+ * arithmetic into a reusable {@link Time}.
+ * <p>
+ * The cached zone rules and offset also serve the astronomy calculations, which need the offset of
+ * civil time from UTC.
+ */
+class TimeSource {
+
+  private static final long MILLIS_PER_SECOND = 1_000;
+  private static final long MILLIS_PER_MINUTE = 60 * MILLIS_PER_SECOND;
+  private static final long MILLIS_PER_HOUR = 60 * MILLIS_PER_MINUTE;
+  private static final long MILLIS_PER_DAY = 24 * MILLIS_PER_HOUR;
+
+  /**
+   * The local time fields of an instant. It's meant to be reused from frame to frame.
+   */
+  @Getter
+  static class Time {
+
+    private long epochMillis;
+    private int hour;
+    private int minute;
+    private int second;
+    private int millisecond;
+    private int dayOfYear;
+    private int zoneOffsetSeconds;
+  }
+
+  private ZoneRules zoneRules;
+  private long offsetMillis;
+  /* The offset is valid from the previous transition (inclusive) to the next (exclusive). */
+  private long offsetValidFromMillis;
+  private long offsetValidUntilMillis;
+  private long cachedEpochDay;
+  private int cachedDayOfYear;
+
+  TimeSource(TimeZone timeZone) {
+    setTimeZone(timeZone);
+  }
+
+  /**
+   * Switches to a different time zone, e.g., when the system broadcasts
+   * {@link android.content.Intent#ACTION_TIMEZONE_CHANGED}.
+   */
+  void setTimeZone(TimeZone timeZone) {
+    zoneRules = timeZone.toZoneId().getRules();
+    offsetValidFromMillis = Long.MAX_VALUE;
+    offsetValidUntilMillis = Long.MIN_VALUE;
+    cachedEpochDay = Long.MIN_VALUE;
+  }
+
+  /**
+   * Fills in the local time fields of the given instant.
+   */
+  void getTime(long epochMillis, Time time) {
+    if (epochMillis < offsetValidFromMillis || epochMillis >= offsetValidUntilMillis) {
+      updateOffset(epochMillis);
+    }
+    final long localMillis = epochMillis + offsetMillis;
+    final long epochDay = Math.floorDiv(localMillis, MILLIS_PER_DAY);
+    final long millisOfDay = Math.floorMod(localMillis, MILLIS_PER_DAY);
+    if (epochDay != cachedEpochDay) {
+      cachedEpochDay = epochDay;
+      cachedDayOfYear = LocalDate.ofEpochDay(epochDay).getDayOfYear();
+    }
+
+    time.epochMillis = epochMillis;
+    time.hour = (int) (millisOfDay / MILLIS_PER_HOUR);
+    time.minute = (int) (millisOfDay % MILLIS_PER_HOUR / MILLIS_PER_MINUTE);
+    time.second = (int) (millisOfDay % MILLIS_PER_MINUTE / MILLIS_PER_SECOND);
+    time.millisecond = (int) (millisOfDay % MILLIS_PER_SECOND);
+    time.dayOfYear = cachedDayOfYear;
+    time.zoneOffsetSeconds = (int) (offsetMillis / MILLIS_PER_SECOND);
+  }
+
+  private void updateOffset(long epochMillis) {
+    final Instant instant = Instant.ofEpochMilli(epochMillis);
+    offsetMillis = zoneRules.getOffset(instant).getTotalSeconds() * MILLIS_PER_SECOND;
+    // Fixed-offset zones have no transitions at all.
+    final ZoneOffsetTransition previous = zoneRules.previousTransition(instant.plusMillis(1));
+    final ZoneOffsetTransition next = zoneRules.nextTransition(instant);
+    offsetValidFromMillis = (previous != null) ? previous.toEpochSecond() * MILLIS_PER_SECOND :
+                            Long.MIN_VALUE;
+    offsetValidUntilMillis = (next != null) ? next.toEpochSecond() * MILLIS_PER_SECOND :
+                             Long.MAX_VALUE;
+  }
+}
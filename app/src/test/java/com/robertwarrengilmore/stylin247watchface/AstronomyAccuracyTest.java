@@ -0,0 +1,84 @@
+package com.robertwarrengilmore.stylin247watchface;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.time.LocalDate;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Sweeps the astronomy approximations against the reference model, reports their errors and
+ * throughput, and holds them to an error budget. Tighten a budget when an approximation improves.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 30)
+public class AstronomyAccuracyTest {
+
+  /*
+   * Every other degree of latitude short of the polar circles, every 5 degrees of longitude, and
+   * every third day of a year.
+   */
+  private static final AstronomyValidator.Grid GRID = new AstronomyValidator.Grid(-60,
+      60,
+      2,
+      5,
+      LocalDate.of(2021, 1, 1),
+      122
+  );
+
+  /*
+   * The day length ignores refraction and uses a sine for the sun's declination. The sweep measured
+   * a median error of 7.7 minutes, and a 99th percentile of 20.6.
+   */
+  private static final double DAY_LENGTH_MEDIAN_BUDGET_MINUTES = 10;
+  private static final double DAY_LENGTH_99TH_PERCENTILE_BUDGET_MINUTES = 25;
+  /* The solar noon ignores the equation of time, which is never more than about 16.5 minutes. */
+  private static final double SOLAR_NOON_MAXIMUM_BUDGET_MINUTES = 18;
+  /*
+   * The phase assumes a mean lunar month, counted from one real new moon. Both that new moon and
+   * the moon at any other time can be over half a day from the mean, in opposite directions, so
+   * the errors add. The sweep measured at most 27.4 hours.
+   */
+  private static final double LUNAR_PHASE_MAXIMUM_BUDGET_HOURS = 30;
+
+  @Test
+  public void approximationsStayWithinBudget() {
+    final AstronomyValidator.Result result = AstronomyValidator.validate(GRID,
+        Runtime.getRuntime().availableProcessors()
+    );
+    System.out.printf("Checked %d samples on %d threads, %.0f per second.%n",
+        result.getSampleCount(),
+        result.getParallelism(),
+        result.getSamplesPerSecond()
+    );
+    System.out.println(result.getDayLengthErrors());
+    System.out.println(result.getSolarNoonErrors());
+    System.out.println(result.getLunarPhaseErrors());
+
+    assertWithin(result.getDayLengthErrors().getMedian(),
+        DAY_LENGTH_MEDIAN_BUDGET_MINUTES,
+        "median day length error"
+    );
+    assertWithin(result.getDayLengthErrors().getNinetyNinthPercentile(),
+        DAY_LENGTH_99TH_PERCENTILE_BUDGET_MINUTES,
+        "99th percentile day length error"
+    );
+    assertWithin(result.getSolarNoonErrors().getMaximum(),
+        SOLAR_NOON_MAXIMUM_BUDGET_MINUTES,
+        "maximum solar noon error"
+    );
+    assertWithin(result.getLunarPhaseErrors().getMaximum(),
+        LUNAR_PHASE_MAXIMUM_BUDGET_HOURS,
+        "maximum lunar phase error"
+    );
+  }
+
+  private static void assertWithin(double error, double budget, String description) {
+    assertTrue("The " + description + " of " + error + " is over the budget of " + budget + ".",
+        error <= budget
+    );
+  }
+}
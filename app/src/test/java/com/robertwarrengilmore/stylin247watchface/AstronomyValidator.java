@@ -0,0 +1,358 @@
+package com.robertwarrengilmore.stylin247watchface;
+
+import android.location.Location;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.TimeZone;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import lombok.Value;
+
+/**
+ * Compares the approximations of {@link AstronomyCalculator} with a more precise reference model,
+ * over a grid of latitudes, longitudes and days, spread across the cores of a fork-join pool. This
+ * gives any faster approximation a measured accuracy budget to meet, which
+ * {@link AstronomyAccuracyTest} enforces.
+ * <p>
+ * The reference for the sun is the NOAA solar calculator, after Meeus: the declination and
+ * equation of time come from the sun's apparent longitude, and sunrise and sunset are taken when
+ * the sun's centre is 0.833 degrees below the horizon, to allow for refraction and the sun's
+ * radius. The reference for the moon uses the six largest periodic terms of its ecliptic
+ * longitude, which are good to a fraction of a degree.
+ * <p>
+ * Like {@link TimeLapseRenderer}, every worker thread gets its own calendar, time source and
+ * location. Each sample writes its errors into its own slots, so the workers share nothing else.
+ */
+class AstronomyValidator {
+
+  /**
+   * The number of consecutive samples that a worker checks without splitting the work further.
+   */
+  private static final int SAMPLES_PER_TASK = 256;
+
+  private static final double SUNRISE_ZENITH_DEGREES = 90.833;
+  private static final double SYNODIC_MONTH_HOURS = 29.530588 * 24;
+  private static final double MINUTES_PER_DAY = 24 * 60;
+  private static final double MILLIS_PER_DAY = 24 * 60 * 60 * 1000;
+  private static final double UNIX_EPOCH_JULIAN_DAY = 2440587.5;
+  private static final double J2000_JULIAN_DAY = 2451545.0;
+  private static final double DAYS_PER_JULIAN_CENTURY = 36525;
+
+  /**
+   * The spread of the absolute errors in one quantity.
+   */
+  @Value
+  static class ErrorSummary {
+
+    String quantity;
+    String unit;
+    double median;
+    double ninetiethPercentile;
+    double ninetyNinthPercentile;
+    double maximum;
+
+    private static ErrorSummary of(String quantity, String unit, float[] errors) {
+      final float[] sorted = errors.clone();
+      Arrays.sort(sorted);
+      return new ErrorSummary(quantity,
+          unit,
+          getPercentile(sorted, 0.5),
+          getPercentile(sorted, 0.9),
+          getPercentile(sorted, 0.99),
+          sorted.length == 0 ? 0 : sorted[sorted.length - 1]
+      );
+    }
+
+    private static double getPercentile(float[] sorted, double fraction) {
+      if (sorted.length == 0) {
+        return 0;
+      }
+      return sorted[(int) Math.min(sorted.length - 1, Math.floor(fraction * sorted.length))];
+    }
+  }
+
+  @Value
+  static class Result {
+
+    ErrorSummary dayLengthErrors;
+    ErrorSummary solarNoonErrors;
+    ErrorSummary lunarPhaseErrors;
+    int sampleCount;
+    int parallelism;
+    long elapsedNanos;
+
+    double getSamplesPerSecond() {
+      return sampleCount / (elapsedNanos / 1e9);
+    }
+  }
+
+  /**
+   * The points and days to check. Every combination of latitude, longitude and day is one sample,
+   * taken at noon UTC.
+   */
+  @Value
+  static class Grid {
+
+    float minimumLatitude;
+    float maximumLatitude;
+    float latitudeStep;
+    float longitudeStep;
+    LocalDate firstDay;
+    int dayCount;
+
+    private int getLatitudeCount() {
+      return (int) Math.floor((maximumLatitude - minimumLatitude) / latitudeStep) + 1;
+    }
+
+    private int getLongitudeCount() {
+      return (int) Math.ceil(360 / longitudeStep);
+    }
+
+    private int getSampleCount() {
+      return getLatitudeCount() * getLongitudeCount() * dayCount;
+    }
+  }
+
+  private static class Worker {
+
+    private final TimeZone timeZone = TimeZone.getTimeZone("UTC");
+    private final Calendar calendar = Calendar.getInstance(timeZone);
+    private final TimeSource timeSource = new TimeSource(timeZone);
+    private final TimeSource.Time time = new TimeSource.Time();
+    private final Location location = new Location("");
+  }
+
+  /**
+   * Checks every sample in the given grid, using the given number of threads.
+   */
+  static Result validate(Grid grid, int parallelism) {
+    final int sampleCount = grid.getSampleCount();
+    final float[] dayLengthErrors = new float[sampleCount];
+    final float[] solarNoonErrors = new float[sampleCount];
+    final float[] lunarPhaseErrors = new float[sampleCount];
+    final ThreadLocal<Worker> workers = ThreadLocal.withInitial(Worker::new);
+    final ForkJoinPool pool = new ForkJoinPool(parallelism);
+    final long startNanos = System.nanoTime();
+    try {
+      pool.invoke(new ValidationTask(grid,
+          0,
+          sampleCount,
+          workers,
+          dayLengthErrors,
+          solarNoonErrors,
+          lunarPhaseErrors
+      ));
+    } finally {
+      pool.shutdown();
+    }
+    final long elapsedNanos = System.nanoTime() - startNanos;
+    return new Result(ErrorSummary.of("day length", "min", dayLengthErrors),
+        ErrorSummary.of("solar noon", "min", solarNoonErrors),
+        ErrorSummary.of("lunar phase", "h", lunarPhaseErrors),
+        sampleCount,
+        parallelism,
+        elapsedNanos
+    );
+  }
+
+  private static class ValidationTask extends RecursiveAction {
+
+    private final Grid grid;
+    private final int from;
+    private final int to;
+    private final ThreadLocal<Worker> workers;
+    private final float[] dayLengthErrors;
+    private final float[] solarNoonErrors;
+    private final float[] lunarPhaseErrors;
+
+    private ValidationTask(
+        Grid grid,
+        int from,
+        int to,
+        ThreadLocal<Worker> workers,
+        float[] dayLengthErrors,
+        float[] solarNoonErrors,
+        float[] lunarPhaseErrors
+    ) {
+      this.grid = grid;
+      this.from = from;
+      this.to = to;
+      this.workers = workers;
+      this.dayLengthErrors = dayLengthErrors;
+      this.solarNoonErrors = solarNoonErrors;
+      this.lunarPhaseErrors = lunarPhaseErrors;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from > SAMPLES_PER_TASK) {
+        final int middle = (from + to) >>> 1;
+        invokeAll(new ValidationTask(grid,
+                from,
+                middle,
+                workers,
+                dayLengthErrors,
+                solarNoonErrors,
+                lunarPhaseErrors
+            ),
+            new ValidationTask(grid,
+                middle,
+                to,
+                workers,
+                dayLengthErrors,
+                solarNoonErrors,
+                lunarPhaseErrors
+            )
+        );
+        return;
+      }
+      final Worker worker = workers.get();
+      final int latitudeCount = grid.getLatitudeCount();
+      final int longitudeCount = grid.getLongitudeCount();
+      for (int index = from; index < to; index++) {
+        final int latitudeIndex = index % latitudeCount;
+        final int longitudeIndex = (index / latitudeCount) % longitudeCount;
+        final int dayIndex = index / (latitudeCount * longitudeCount);
+        final double latitude = grid.getMinimumLatitude() + latitudeIndex * grid.getLatitudeStep();
+        final double longitude = -180 + longitudeIndex * grid.getLongitudeStep();
+        final long epochMillis = grid
+            .getFirstDay()
+            .plusDays(dayIndex)
+            .atTime(LocalTime.NOON)
+            .toInstant(ZoneOffset.UTC)
+            .toEpochMilli();
+        checkSample(worker, latitude, longitude, epochMillis, index);
+      }
+    }
+
+    private void checkSample(
+        Worker worker, double latitude, double longitude, long epochMillis, int index
+    ) {
+      worker.location.setLatitude(latitude);
+      worker.location.setLongitude(longitude);
+      worker.calendar.setTimeInMillis(epochMillis);
+      worker.timeSource.getTime(epochMillis, worker.time);
+
+      final double julianCenturies =
+          (epochMillis / MILLIS_PER_DAY + UNIX_EPOCH_JULIAN_DAY - J2000_JULIAN_DAY) /
+              DAYS_PER_JULIAN_CENTURY;
+      final SolarPosition sun = new SolarPosition(julianCenturies);
+
+      final double dayLengthMinutes = AstronomyCalculator
+          .getSolarDayLength(worker.location, worker.calendar)
+          .getSeconds() / 60.0;
+      dayLengthErrors[index] = (float) Math.abs(
+          dayLengthMinutes - sun.getDayLengthMinutes(latitude));
+
+      final double solarNoonMinutes =
+          AstronomyCalculator.getSolarNoon(worker.location, worker.time).toSecondOfDay() / 60.0;
+      solarNoonErrors[index] = (float) Math.abs(getWrappedDifference(solarNoonMinutes,
+          sun.getSolarNoonMinutesUtc(longitude),
+          MINUTES_PER_DAY
+      ));
+
+      final double lunarPhase = AstronomyCalculator.getLunarPhase(worker.calendar);
+      lunarPhaseErrors[index] = (float) Math.abs(getWrappedDifference(lunarPhase,
+          getReferenceLunarPhase(julianCenturies, sun.getApparentLongitude()),
+          1
+      ) * SYNODIC_MONTH_HOURS);
+    }
+  }
+
+  /**
+   * The sun's position at an instant, after the NOAA solar calculator.
+   */
+  private static class SolarPosition {
+
+    /* In degrees. */
+    private final double apparentLongitude;
+    private final double declination;
+    private final double equationOfTimeMinutes;
+
+    private SolarPosition(double julianCenturies) {
+      final double t = julianCenturies;
+      final double meanLongitude = normalise(280.46646 + t * (36000.76983 + t * 0.0003032));
+      final double meanAnomaly = 357.52911 + t * (35999.05029 - 0.0001537 * t);
+      final double eccentricity = 0.016708634 - t * (0.000042037 + 0.0000001267 * t);
+      final double centre = sin(meanAnomaly) * (1.914602 - t * (0.004817 + 0.000014 * t)) +
+          sin(2 * meanAnomaly) * (0.019993 - 0.000101 * t) + sin(3 * meanAnomaly) * 0.000289;
+      final double omega = 125.04 - 1934.136 * t;
+      apparentLongitude = meanLongitude + centre - 0.00569 - 0.00478 * sin(omega);
+      final double meanObliquity =
+          23 + (26 + (21.448 - t * (46.815 + t * (0.00059 - t * 0.001813))) / 60) / 60;
+      final double obliquity = meanObliquity + 0.00256 * cos(omega);
+      declination = Math.toDegrees(Math.asin(sin(obliquity) * sin(apparentLongitude)));
+      final double y = Math.pow(Math.tan(Math.toRadians(obliquity / 2)), 2);
+      equationOfTimeMinutes = 4 * Math.toDegrees(y * sin(2 * meanLongitude) -
+          2 * eccentricity * sin(meanAnomaly) +
+          4 * eccentricity * y * sin(meanAnomaly) * cos(2 * meanLongitude) -
+          0.5 * y * y * sin(4 * meanLongitude) -
+          1.25 * eccentricity * eccentricity * sin(2 * meanAnomaly));
+    }
+
+    private double getApparentLongitude() {
+      return apparentLongitude;
+    }
+
+    private double getDayLengthMinutes(double latitude) {
+      final double cosHourAngle = cos(SUNRISE_ZENITH_DEGREES) / (cos(latitude) * cos(declination)) -
+          Math.tan(Math.toRadians(latitude)) * Math.tan(Math.toRadians(declination));
+      if (cosHourAngle > 1) {
+        return 0;
+      }
+      if (cosHourAngle < -1) {
+        return MINUTES_PER_DAY;
+      }
+      // The sun's hour angle moves a degree every four minutes.
+      return 8 * Math.toDegrees(Math.acos(cosHourAngle));
+    }
+
+    private double getSolarNoonMinutesUtc(double longitude) {
+      return 720 - 4 * longitude - equationOfTimeMinutes;
+    }
+  }
+
+  /**
+   * Works out the phase of the moon from the difference between its ecliptic longitude and the
+   * sun's, where 0 is a new moon and 0.5 is a full moon.
+   */
+  private static double getReferenceLunarPhase(
+      double julianCenturies, double solarApparentLongitude
+  ) {
+    final double t = julianCenturies;
+    final double lunarLongitude = 218.32 + 481267.881 * t +
+        6.29 * sin(134.9 + 477198.85 * t) -
+        1.27 * sin(259.2 - 413335.38 * t) +
+        0.66 * sin(235.7 + 890534.23 * t) +
+        0.21 * sin(269.9 + 954397.70 * t) -
+        0.19 * sin(357.5 + 35999.05 * t) -
+        0.11 * sin(186.6 + 966404.05 * t);
+    return normalise(lunarLongitude - solarApparentLongitude) / 360;
+  }
+
+  /**
+   * Returns the difference between two values on a circle of the given circumference, taking the
+   * shorter way around.
+   */
+  private static double getWrappedDifference(double a, double b, double circumference) {
+    final double difference = ((a - b) % circumference + circumference) % circumference;
+    return difference > circumference / 2 ? difference - circumference : difference;
+  }
+
+  private static double normalise(double degrees) {
+    return ((degrees % 360) + 360) % 360;
+  }
+
+  private static double sin(double degrees) {
+    return Math.sin(Math.toRadians(degrees));
+  }
+
+  private static double cos(double degrees) {
+    return Math.cos(Math.toRadians(degrees));
+  }
+}
@@ -0,0 +1,54 @@
+package com.robertwarrengilmore.stylin247watchface;
+
+import android.graphics.Bitmap;
+
+import org.robolectric.annotation.Implementation;
+import org.robolectric.annotation.Implements;
+import org.robolectric.shadows.ShadowNativeBitmap;
+
+/**
+ * Counts every bitmap that's allocated, whether it's created or copied from another. Tests that
+ * use it must name it in their {@code @Config} shadows, and run in native graphics mode.
+ */
+@Implements(value = Bitmap.class, isInAndroidSdk = false)
+public class BitmapAllocationCounter extends ShadowNativeBitmap {
+
+  private static long allocationCount = 0;
+
+  static synchronized long getAllocationCount() {
+    return allocationCount;
+  }
+
+  private static synchronized void countAllocation() {
+    allocationCount++;
+  }
+
+  @Implementation
+  protected static Bitmap nativeCreate(
+      int[] colors,
+      int offset,
+      int stride,
+      int width,
+      int height,
+      int nativeConfig,
+      boolean mutable,
+      long colorSpacePointer
+  ) {
+    countAllocation();
+    return ShadowNativeBitmap.nativeCreate(colors,
+        offset,
+        stride,
+        width,
+        height,
+        nativeConfig,
+        mutable,
+        colorSpacePointer
+    );
+  }
+
+  @Implementation
+  protected static Bitmap nativeCopy(long sourceBitmapPointer, int nativeConfig, boolean mutable) {
+    countAllocation();
+    return ShadowNativeBitmap.nativeCopy(sourceBitmapPointer, nativeConfig, mutable);
+  }
+}
@@ -0,0 +1,44 @@
+package com.robertwarrengilmore.stylin247watchface;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+
+/**
+ * Compares rendered images pixel by pixel.
+ */
+final class BitmapComparison {
+
+  /* Allows for rounding differences in anti-aliasing between two ways of drawing the same thing. */
+  private static final int CHANNEL_TOLERANCE = 2;
+
+  private BitmapComparison() {
+  }
+
+  /**
+   * Counts the pixels that differ between two images of the same size by more than the tolerance
+   * in any channel.
+   */
+  static int countMismatches(Bitmap expected, Bitmap actual) {
+    final int width = expected.getWidth();
+    final int[] expectedRow = new int[width];
+    final int[] actualRow = new int[width];
+    int mismatchCount = 0;
+    for (int y = 0; y < expected.getHeight(); y++) {
+      expected.getPixels(expectedRow, 0, width, 0, y, width, 1);
+      actual.getPixels(actualRow, 0, width, 0, y, width, 1);
+      for (int x = 0; x < width; x++) {
+        if (!isClose(expectedRow[x], actualRow[x])) {
+          mismatchCount++;
+        }
+      }
+    }
+    return mismatchCount;
+  }
+
+  private static boolean isClose(int expected, int actual) {
+    return Math.abs(Color.alpha(expected) - Color.alpha(actual)) <= CHANNEL_TOLERANCE &&
+        Math.abs(Color.red(expected) - Color.red(actual)) <= CHANNEL_TOLERANCE &&
+        Math.abs(Color.green(expected) - Color.green(actual)) <= CHANNEL_TOLERANCE &&
+        Math.abs(Color.blue(expected) - Color.blue(actual)) <= CHANNEL_TOLERANCE;
+  }
+}
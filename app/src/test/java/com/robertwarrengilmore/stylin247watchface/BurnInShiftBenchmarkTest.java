@@ -0,0 +1,108 @@
+package com.robertwarrengilmore.stylin247watchface;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Point;
+import android.graphics.Rect;
+import android.location.Location;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+
+import java.time.Instant;
+import java.util.Calendar;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Times ambient frames shifted for burn-in protection against unshifted ones and against full
+ * rebuilds, and checks that a shift only blits the cached background, without recording or
+ * rasterising it again.
+ */
+@RunWith(RobolectricTestRunner.class)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+@Config(sdk = 30, shadows = BitmapAllocationCounter.class)
+public class BurnInShiftBenchmarkTest {
+
+  private static final int SIZE = 400;
+  private static final int FRAME_COUNT = 200;
+  private static final int REBUILD_COUNT = 20;
+  private static final Instant WHEN = Instant.parse("2021-06-21T23:00:00Z");
+  private static final TimeZone TIME_ZONE = TimeZone.getTimeZone("Europe/London");
+  private static final Location LONDON = FrameRenderer.getLocation(51.5, -0.13);
+  private static final FaceOptions OPTIONS = FaceOptions.builder().showHourNumbers(true).build();
+  private static final Point NO_SHIFT = new Point(0, 0);
+  private static final Point[] SHIFTS = {
+      new Point(4, 0), new Point(0, 4), new Point(-4, 0), new Point(0, -4),
+  };
+
+  private final Painter painter = new Painter(new CacheRegistry(Long.MAX_VALUE));
+  private final Palette palette = Palette.getAmbientPalette(RuntimeEnvironment.getApplication(),
+      SIZE / 2f
+  );
+  private final Canvas canvas = new Canvas(Bitmap.createBitmap(SIZE,
+      SIZE,
+      Bitmap.Config.ARGB_8888
+  ));
+  private final Rect bounds = new Rect(0, 0, SIZE, SIZE);
+  private final Calendar calendar = Calendar.getInstance(TIME_ZONE);
+  private final TimeSource.Time time = new TimeSource.Time();
+
+  @Test
+  public void shiftedFramesBlitTheCachedBackground() {
+    palette.setBurnInProtection(true);
+    new TimeSource(TIME_ZONE).getTime(WHEN.toEpochMilli(), time);
+    // The first frame builds the background, and warms up the drawing code.
+    for (int index = 0; index < FRAME_COUNT; index++) {
+      drawFrame(SHIFTS[index % SHIFTS.length]);
+    }
+
+    final long backgroundBuildCount = painter.getBackgroundBuildCount();
+    final long bitmapCount = BitmapAllocationCounter.getAllocationCount();
+    final long unshiftedNanos = timeFrames(false);
+    final long shiftedNanos = timeFrames(true);
+    assertEquals("A shift rebuilt the background.",
+        backgroundBuildCount,
+        painter.getBackgroundBuildCount()
+    );
+    assertEquals("A frame allocated a bitmap.",
+        bitmapCount,
+        BitmapAllocationCounter.getAllocationCount()
+    );
+
+    final long rebuildStartNanos = System.nanoTime();
+    for (int index = 0; index < REBUILD_COUNT; index++) {
+      painter.invalidateCachedBackground();
+      drawFrame(NO_SHIFT);
+    }
+    final long rebuildNanos = (System.nanoTime() - rebuildStartNanos) / REBUILD_COUNT;
+
+    System.out.printf("Unshifted frame %d µs, shifted frame %d µs, full rebuild %d µs.%n",
+        unshiftedNanos / 1000,
+        shiftedNanos / 1000,
+        rebuildNanos / 1000
+    );
+    assertTrue("A shifted frame took as long as a full rebuild.", shiftedNanos < rebuildNanos);
+  }
+
+  /**
+   * Draws a run of frames, shifted or not, and returns the mean time that each took.
+   */
+  private long timeFrames(boolean shifted) {
+    final long startNanos = System.nanoTime();
+    for (int index = 0; index < FRAME_COUNT; index++) {
+      drawFrame(shifted ? SHIFTS[index % SHIFTS.length] : NO_SHIFT);
+    }
+    return (System.nanoTime() - startNanos) / FRAME_COUNT;
+  }
+
+  private void drawFrame(Point burnInShift) {
+    painter.draw(canvas, bounds, palette, calendar, time, LONDON, OPTIONS, burnInShift);
+  }
+}
@@ -0,0 +1,112 @@
+package com.robertwarrengilmore.stylin247watchface;
+
+import android.content.ComponentCallbacks2;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks which caches each trim level evicts.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 30)
+public class CacheRegistryTest {
+
+  private static final String SPARE = "spare";
+  private static final String INACTIVE = "inactive";
+  private static final String ACTIVE = "active";
+  private static final long BYTE_COUNT = 1024;
+
+  private final CacheRegistry cacheRegistry = new CacheRegistry(Long.MAX_VALUE);
+  private final List<String> evicted = new ArrayList<>();
+
+  @Test
+  public void runningModerateEvictsSpareCaches() {
+    assertTrimEvicts(ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE, SPARE);
+  }
+
+  @Test
+  public void runningLowEvictsInactiveCaches() {
+    assertTrimEvicts(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW, SPARE, INACTIVE);
+  }
+
+  @Test
+  public void runningCriticalEvictsEverything() {
+    assertTrimEvicts(ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL, SPARE, INACTIVE, ACTIVE);
+  }
+
+  @Test
+  public void uiHiddenEvictsInactiveCaches() {
+    assertTrimEvicts(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN, SPARE, INACTIVE);
+  }
+
+  @Test
+  public void backgroundEvictsInactiveCaches() {
+    assertTrimEvicts(ComponentCallbacks2.TRIM_MEMORY_BACKGROUND, SPARE, INACTIVE);
+  }
+
+  @Test
+  public void moderateEvictsEverything() {
+    assertTrimEvicts(ComponentCallbacks2.TRIM_MEMORY_MODERATE, SPARE, INACTIVE, ACTIVE);
+  }
+
+  @Test
+  public void completeEvictsEverything() {
+    assertTrimEvicts(ComponentCallbacks2.TRIM_MEMORY_COMPLETE, SPARE, INACTIVE, ACTIVE);
+  }
+
+  @Test
+  public void lowMemoryEvictsEverything() {
+    putCaches();
+    cacheRegistry.evictAll();
+    assertEquals(Arrays.asList(SPARE, INACTIVE, ACTIVE), evicted);
+    assertEquals(0, cacheRegistry.getCurrentByteCount());
+  }
+
+  @Test
+  public void evictedCachesCanBeRegisteredAgain() {
+    putCaches();
+    cacheRegistry.trimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+    put(ACTIVE, CacheRegistry.PRIORITY_ACTIVE);
+    assertEquals(BYTE_COUNT, cacheRegistry.getCurrentByteCount());
+  }
+
+  @Test
+  public void overBudgetEvictsLowestPriorityFirst() {
+    cacheRegistry.setBudgetByteCount(2 * BYTE_COUNT);
+    put(ACTIVE, CacheRegistry.PRIORITY_ACTIVE);
+    put(SPARE, CacheRegistry.PRIORITY_SPARE);
+    put(INACTIVE, CacheRegistry.PRIORITY_INACTIVE);
+    assertEquals(Arrays.asList(SPARE), evicted);
+    assertEquals(2 * BYTE_COUNT, cacheRegistry.getCurrentByteCount());
+  }
+
+  /**
+   * Registers one cache of each priority, trims at the given level, and checks that exactly the
+   * given caches were evicted, and that the registry no longer counts them.
+   */
+  private void assertTrimEvicts(int level, String... expected) {
+    putCaches();
+    cacheRegistry.trimMemory(level);
+    assertEquals(Arrays.asList(expected), evicted);
+    assertEquals((3 - expected.length) * BYTE_COUNT, cacheRegistry.getCurrentByteCount());
+  }
+
+  private void putCaches() {
+    put(SPARE, CacheRegistry.PRIORITY_SPARE);
+    put(INACTIVE, CacheRegistry.PRIORITY_INACTIVE);
+    put(ACTIVE, CacheRegistry.PRIORITY_ACTIVE);
+  }
+
+  private void put(String name, int priority) {
+    cacheRegistry.put(name, priority, BYTE_COUNT, () -> evicted.add(name));
+  }
+}
@@ -0,0 +1,41 @@
+package com.robertwarrengilmore.stylin247watchface;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+
+import java.util.List;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Fails the build if a change makes the painter issue more drawing calls, layers or bitmap
+ * allocations than the budgets in {@code draw_call_budgets.properties} allow.
+ */
+@RunWith(RobolectricTestRunner.class)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+@Config(sdk = 30, shadows = BitmapAllocationCounter.class)
+public class DrawCallBudgetTest {
+
+  private static final int SIZE = 400;
+
+  @Test
+  public void painterStaysWithinBudget() {
+    final List<DrawCallCounter.Measurement> overBudget = DrawCallCounter.findOverBudget(
+        RuntimeEnvironment.getApplication(),
+        SIZE
+    );
+    assertTrue("Over budget:\n" + joinLines(overBudget), overBudget.isEmpty());
+  }
+
+  private static String joinLines(List<DrawCallCounter.Measurement> measurements) {
+    final StringBuilder builder = new StringBuilder();
+    for (DrawCallCounter.Measurement measurement : measurements) {
+      builder.append(measurement).append('\n');
+    }
+    return builder.toString();
+  }
+}
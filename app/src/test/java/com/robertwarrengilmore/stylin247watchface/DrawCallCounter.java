@@ -0,0 +1,482 @@
+package com.robertwarrengilmore.stylin247watchface;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.Point;
+import android.graphics.PointF;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.location.Location;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Properties;
+import java.util.TimeZone;
+
+import lombok.Getter;
+import lombok.Value;
+
+/**
+ * Counts the drawing calls, offscreen layers and bitmap allocations that the painter makes, and
+ * checks them against the budgets in {@code draw_call_budgets.properties}. A change that adds work
+ * to every frame, or to every rebuild, then fails {@link DrawCallBudgetTest} rather than making a
+ * slower watch.
+ * <p>
+ * Bitmaps are counted by {@link BitmapAllocationCounter}, which the test must install.
+ */
+class DrawCallCounter {
+
+  private static final String BUDGETS_RESOURCE = "/draw_call_budgets.properties";
+
+  /**
+   * A canvas that counts the calls made on it, and otherwise draws as usual.
+   */
+  @Getter
+  private static class CountingCanvas extends Canvas {
+
+    private int drawCount = 0;
+    private int layerCount = 0;
+
+    private CountingCanvas(Bitmap bitmap) {
+      super(bitmap);
+    }
+
+    private void reset() {
+      drawCount = 0;
+      layerCount = 0;
+    }
+
+    @Override
+    public int saveLayer(RectF bounds, Paint paint) {
+      layerCount++;
+      return super.saveLayer(bounds, paint);
+    }
+
+    @Override
+    public int saveLayer(float left, float top, float right, float bottom, Paint paint) {
+      layerCount++;
+      return super.saveLayer(left, top, right, bottom, paint);
+    }
+
+    @Override
+    public int saveLayerAlpha(RectF bounds, int alpha) {
+      layerCount++;
+      return super.saveLayerAlpha(bounds, alpha);
+    }
+
+    @Override
+    public int saveLayerAlpha(float left, float top, float right, float bottom, int alpha) {
+      layerCount++;
+      return super.saveLayerAlpha(left, top, right, bottom, alpha);
+    }
+
+    @Override
+    public void drawPaint(Paint paint) {
+      drawCount++;
+      super.drawPaint(paint);
+    }
+
+    @Override
+    public void drawColor(int color) {
+      drawCount++;
+      super.drawColor(color);
+    }
+
+    @Override
+    public void drawPath(Path path, Paint paint) {
+      drawCount++;
+      super.drawPath(path, paint);
+    }
+
+    @Override
+    public void drawLine(float startX, float startY, float stopX, float stopY, Paint paint) {
+      drawCount++;
+      super.drawLine(startX, startY, stopX, stopY, paint);
+    }
+
+    @Override
+    public void drawLines(float[] points, Paint paint) {
+      drawCount++;
+      super.drawLines(points, paint);
+    }
+
+    @Override
+    public void drawCircle(float cx, float cy, float radius, Paint paint) {
+      drawCount++;
+      super.drawCircle(cx, cy, radius, paint);
+    }
+
+    @Override
+    public void drawOval(RectF oval, Paint paint) {
+      drawCount++;
+      super.drawOval(oval, paint);
+    }
+
+    @Override
+    public void drawOval(float left, float top, float right, float bottom, Paint paint) {
+      drawCount++;
+      super.drawOval(left, top, right, bottom, paint);
+    }
+
+    @Override
+    public void drawArc(
+        RectF oval, float startAngle, float sweepAngle, boolean useCenter, Paint paint
+    ) {
+      drawCount++;
+      super.drawArc(oval, startAngle, sweepAngle, useCenter, paint);
+    }
+
+    @Override
+    public void drawArc(
+        float left,
+        float top,
+        float right,
+        float bottom,
+        float startAngle,
+        float sweepAngle,
+        boolean useCenter,
+        Paint paint
+    ) {
+      drawCount++;
+      super.drawArc(left, top, right, bottom, startAngle, sweepAngle, useCenter, paint);
+    }
+
+    @Override
+    public void drawRect(RectF rect, Paint paint) {
+      drawCount++;
+      super.drawRect(rect, paint);
+    }
+
+    @Override
+    public void drawRect(float left, float top, float right, float bottom, Paint paint) {
+      drawCount++;
+      super.drawRect(left, top, right, bottom, paint);
+    }
+
+    @Override
+    public void drawBitmap(Bitmap bitmap, float left, float top, Paint paint) {
+      drawCount++;
+      super.drawBitmap(bitmap, left, top, paint);
+    }
+
+    @Override
+    public void drawBitmap(Bitmap bitmap, Rect src, RectF dst, Paint paint) {
+      drawCount++;
+      super.drawBitmap(bitmap, src, dst, paint);
+    }
+
+    @Override
+    public void drawBitmap(Bitmap bitmap, Rect src, Rect dst, Paint paint) {
+      drawCount++;
+      super.drawBitmap(bitmap, src, dst, paint);
+    }
+
+    @Override
+    public void drawText(String text, float x, float y, Paint paint) {
+      drawCount++;
+      super.drawText(text, x, y, paint);
+    }
+
+    @Override
+    public void drawTextOnPath(String text, Path path, float hOffset, float vOffset, Paint paint) {
+      drawCount++;
+      super.drawTextOnPath(text, path, hOffset, vOffset, paint);
+    }
+  }
+
+  /**
+   * What one piece of drawing cost, and what it was allowed to cost.
+   */
+  @Value
+  static class Measurement {
+
+    String description;
+    int drawCount;
+    int drawBudget;
+    int layerCount;
+    int layerBudget;
+    /**
+     * The number of bitmaps allocated, whether created or copied, not counting the canvas's own.
+     */
+    long bitmapCount;
+    long bitmapBudget;
+
+    boolean isWithinBudget() {
+      return drawCount <= drawBudget && layerCount <= layerBudget && bitmapCount <= bitmapBudget;
+    }
+
+    @Override
+    public String toString() {
+      return description + ": " + drawCount + "/" + drawBudget + " draws, " + layerCount + "/" +
+          layerBudget + " layers, " + bitmapCount + "/" + bitmapBudget + " bitmaps";
+    }
+  }
+
+  /* A June noon in London, when both sectors, the sun and the moon are all drawn. */
+  private static final Instant WHEN = Instant.parse("2021-06-21T12:00:00Z");
+  private static final TimeZone TIME_ZONE = TimeZone.getTimeZone("Europe/London");
+  private static final Location LOCATION = FrameRenderer.getLocation(51.5, -0.13);
+  private static final Point BURN_IN_SHIFT = new Point(4, 4);
+  private static final Point NO_SHIFT = new Point(0, 0);
+
+  private static final Properties BUDGETS = loadBudgets();
+
+  private static Properties loadBudgets() {
+    final Properties budgets = new Properties();
+    try (InputStream inputStream = DrawCallCounter.class.getResourceAsStream(BUDGETS_RESOURCE)) {
+      if (inputStream == null) {
+        throw new IllegalStateException("Could not find " + BUDGETS_RESOURCE + ".");
+      }
+      budgets.load(inputStream);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return budgets;
+  }
+
+  private static int getBudget(String name) {
+    final String budget = BUDGETS.getProperty(name);
+    if (budget == null) {
+      throw new IllegalStateException("No budget for " + name + ".");
+    }
+    return Integer.parseInt(budget.trim());
+  }
+
+  /**
+   * Measures the drawing under every palette and combination of options, and returns the
+   * measurements that exceed their budgets. If the list is empty, the painter is within budget.
+   */
+  static List<Measurement> findOverBudget(Context context, int size) {
+    final List<Measurement> overBudget = new ArrayList<>();
+    for (Measurement measurement : measureAll(context, size)) {
+      if (!measurement.isWithinBudget()) {
+        overBudget.add(measurement);
+      }
+    }
+    return overBudget;
+  }
+
+  /**
+   * Measures the drawing under every palette and combination of options.
+   */
+  static List<Measurement> measureAll(Context context, int size) {
+    final FrameRenderer.PaletteFactory[] paletteFactories = {
+        Palette::getMutedPalette, Palette::getVividPalette, Palette::getAmbientPalette,
+    };
+    final List<Measurement> measurements = new ArrayList<>();
+    for (FrameRenderer.PaletteFactory paletteFactory : paletteFactories) {
+      final Palette palette = paletteFactory.create(context, size / 2f);
+      for (FaceOptions options : getAllOptions()) {
+        for (boolean roundFace : new boolean[]{false, true}) {
+          measurements.add(measureBackground(size, palette, options, roundFace));
+          measurements.add(measureRebuild(size, palette, options, roundFace));
+          measurements.add(measureFrame(size, palette, options, roundFace, NO_SHIFT));
+          measurements.add(measureFrame(size,
+              palette,
+              options,
+              roundFace,
+              BURN_IN_SHIFT
+          ));
+        }
+      }
+      final float spriteRadius = Painter.SUN_AND_MOON_RADIUS * size / 2f;
+      for (boolean drawRealisticSun : new boolean[]{false, true}) {
+        measurements.add(measureSun(palette, spriteRadius, drawRealisticSun));
+      }
+      for (int phaseIndex = 0; phaseIndex < MoonSpriteAtlas.PHASE_COUNT; phaseIndex++) {
+        measurements.add(measureMoon(palette,
+            spriteRadius,
+            (float) phaseIndex / MoonSpriteAtlas.PHASE_COUNT
+        ));
+      }
+    }
+    return measurements;
+  }
+
+  private static List<FaceOptions> getAllOptions() {
+    final List<FaceOptions> allOptions = new ArrayList<>();
+    for (int bits = 0; bits < 1 << 6; bits++) {
+      final FaceOptions options = FaceOptions.builder()
+          .drawRealisticSun((bits & 1) != 0)
+          .showHourNumbers((bits & 2) != 0)
+          .angleHourNumbers((bits & 4) != 0)
+          .showSingleMinuteTicks((bits & 8) != 0)
+          .showSecondHand((bits & 16) != 0)
+          .animateSecondHandSmoothly((bits & 32) != 0)
+          .build();
+      // The settings only allow smooth animation of a second hand that's shown.
+      if (!options.isShowSecondHand() && options.isAnimateSecondHandSmoothly()) {
+        continue;
+      }
+      allOptions.add(options);
+    }
+    return allOptions;
+  }
+
+  /**
+   * Measures a background rebuild.
+   */
+  private static Measurement measureBackground(
+      int size, Palette palette, FaceOptions options, boolean roundFace
+  ) {
+    final Painter painter = createPainter(roundFace);
+    final CountingCanvas canvas = createCanvas(size);
+    final Calendar calendar = Calendar.getInstance(TIME_ZONE);
+    calendar.setTimeInMillis(WHEN.toEpochMilli());
+    final long bitmapCount = BitmapAllocationCounter.getAllocationCount();
+    painter.drawUncachedBackground(canvas,
+        new Rect(0, 0, size, size),
+        palette,
+        calendar,
+        getTime(),
+        LOCATION,
+        options
+    );
+    return new Measurement(
+        "background (" + palette.getSpriteKey() + ", " + options + ", round " + roundFace + ")",
+        canvas.getDrawCount(),
+        getBudget("background.draws"),
+        canvas.getLayerCount(),
+        getBudget("background.layers"),
+        BitmapAllocationCounter.getAllocationCount() - bitmapCount,
+        getBudget("background.bitmaps")
+    );
+  }
+
+  /**
+   * Measures the first frame drawn by a new painter, which records and rasterises the background,
+   * and makes the sun and moon sprites.
+   */
+  private static Measurement measureRebuild(
+      int size, Palette palette, FaceOptions options, boolean roundFace
+  ) {
+    final Painter painter = createPainter(roundFace);
+    final CountingCanvas canvas = createCanvas(size);
+    final Calendar calendar = Calendar.getInstance(TIME_ZONE);
+    calendar.setTimeInMillis(WHEN.toEpochMilli());
+    final long bitmapCount = BitmapAllocationCounter.getAllocationCount();
+    painter.draw(canvas,
+        new Rect(0, 0, size, size),
+        palette,
+        calendar,
+        getTime(),
+        LOCATION,
+        options,
+        NO_SHIFT
+    );
+    return new Measurement(
+        "rebuild (" + palette.getSpriteKey() + ", " + options + ", round " + roundFace + ")",
+        canvas.getDrawCount(),
+        getBudget("rebuild.draws"),
+        canvas.getLayerCount(),
+        getBudget("rebuild.layers"),
+        BitmapAllocationCounter.getAllocationCount() - bitmapCount,
+        getBudget("rebuild.bitmaps")
+    );
+  }
+
+  /**
+   * Measures a frame drawn from a background that's already cached, as most frames are.
+   */
+  private static Measurement measureFrame(
+      int size,
+      Palette palette,
+      FaceOptions options,
+      boolean roundFace,
+      Point burnInShift
+  ) {
+    final Painter painter = createPainter(roundFace);
+    final CountingCanvas canvas = createCanvas(size);
+    final Calendar calendar = Calendar.getInstance(TIME_ZONE);
+    calendar.setTimeInMillis(WHEN.toEpochMilli());
+    final Rect bounds = new Rect(0, 0, size, size);
+    final TimeSource.Time time = getTime();
+    // The first frame builds the background. Only the second is counted.
+    painter.draw(canvas, bounds, palette, calendar, time, LOCATION, options, burnInShift);
+    canvas.reset();
+    final long bitmapCount = BitmapAllocationCounter.getAllocationCount();
+    painter.draw(canvas, bounds, palette, calendar, time, LOCATION, options, burnInShift);
+    return new Measurement("frame (" + palette.getSpriteKey() + ", " + options + ", round " +
+        roundFace + ", shift " + burnInShift + ")",
+        canvas.getDrawCount(),
+        getBudget("frame.draws"),
+        canvas.getLayerCount(),
+        getBudget("frame.layers"),
+        BitmapAllocationCounter.getAllocationCount() - bitmapCount,
+        getBudget("frame.bitmaps")
+    );
+  }
+
+  /**
+   * Measures the sun, drawn from scratch as when its sprite is made.
+   */
+  private static Measurement measureSun(Palette palette, float radius, boolean drawRealisticSun) {
+    final CountingCanvas canvas = createCanvas((int) Math.ceil(
+        2 * Painter.getSunRayTipRadius(radius)));
+    final long bitmapCount = BitmapAllocationCounter.getAllocationCount();
+    Painter.drawSun(canvas,
+        new PointF(canvas.getWidth() / 2f, canvas.getHeight() / 2f),
+        radius,
+        drawRealisticSun,
+        palette.getCartoonSunPaint(),
+        palette.getRealisticSunPaint()
+    );
+    return new Measurement(
+        "sun (" + palette.getSpriteKey() + ", realistic " + drawRealisticSun + ")",
+        canvas.getDrawCount(),
+        getBudget("sun.draws"),
+        canvas.getLayerCount(),
+        0,
+        BitmapAllocationCounter.getAllocationCount() - bitmapCount,
+        0
+    );
+  }
+
+  /**
+   * Measures the moon, drawn from scratch as when its sprite is made.
+   */
+  private static Measurement measureMoon(Palette palette, float radius, float phase) {
+    final CountingCanvas canvas = createCanvas((int) Math.ceil(2 * radius) + 2);
+    final long bitmapCount = BitmapAllocationCounter.getAllocationCount();
+    Painter.drawMoon(canvas,
+        new PointF(canvas.getWidth() / 2f, canvas.getHeight() / 2f),
+        radius,
+        phase,
+        palette.getMoonLitPaint(),
+        palette.getMoonDarkPaint(),
+        palette.getMoonLinePaint()
+    );
+    return new Measurement("moon (" + palette.getSpriteKey() + ", phase " + phase + ")",
+        canvas.getDrawCount(),
+        getBudget("moon.draws"),
+        canvas.getLayerCount(),
+        0,
+        BitmapAllocationCounter.getAllocationCount() - bitmapCount,
+        0
+    );
+  }
+
+  private static Painter createPainter(boolean roundFace) {
+    final Painter painter = new Painter(new CacheRegistry(Long.MAX_VALUE));
+    painter.setRoundFace(roundFace);
+    return painter;
+  }
+
+  private static CountingCanvas createCanvas(int size) {
+    return new CountingCanvas(Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888));
+  }
+
+  private static TimeSource.Time getTime() {
+    final TimeSource.Time time = new TimeSource.Time();
+    new TimeSource(TIME_ZONE).getTime(WHEN.toEpochMilli(), time);
+    return time;
+  }
+}
@@ -0,0 +1,121 @@
+package com.robertwarrengilmore.stylin247watchface;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Rect;
+import android.location.Location;
+
+import androidx.annotation.Nullable;
+
+import java.time.Instant;
+import java.util.Calendar;
+import java.util.TimeZone;
+
+import lombok.Value;
+
+/**
+ * Counts how many times a background rebuild writes each pixel. The background is drawn with
+ * {@link Palette#getOverdrawPalette}, whose paints add one to the alpha of every pixel they touch,
+ * so that afterwards each pixel's alpha is the number of times it was written. See
+ * {@link OverdrawTest}.
+ */
+class OverdrawCounter {
+
+  @Value
+  static class Report {
+
+    /**
+     * The total number of pixel writes, counting a pixel once for every time it was written.
+     */
+    long pixelWrites;
+    /**
+     * The number of distinct pixels written at least once.
+     */
+    long pixelsWritten;
+    /**
+     * The number of pixel writes outside the visible circle of a round screen.
+     */
+    long pixelWritesOutsideFace;
+    /**
+     * The most times that any one pixel was written. Counts saturate at 255.
+     */
+    int maximumWritesPerPixel;
+
+    double getWritesPerPixelWritten() {
+      return pixelsWritten == 0 ? 0 : (double) pixelWrites / pixelsWritten;
+    }
+  }
+
+  /**
+   * Rebuilds the background as it would appear at the given instant, and counts the writes.
+   *
+   * @param roundFace
+   *     whether to draw the background as for a round screen
+   */
+  static Report measureBackground(
+      Context context,
+      Instant when,
+      TimeZone timeZone,
+      @Nullable Location location,
+      int size,
+      FaceOptions options,
+      boolean roundFace
+  ) {
+    final Palette palette = Palette.getOverdrawPalette(context, size / 2f);
+    final Calendar calendar = Calendar.getInstance(timeZone);
+    calendar.setTimeInMillis(when.toEpochMilli());
+    final TimeSource.Time time = new TimeSource.Time();
+    new TimeSource(timeZone).getTime(when.toEpochMilli(), time);
+
+    final Painter painter = new Painter(new CacheRegistry(Long.MAX_VALUE));
+    painter.setRoundFace(roundFace);
+    final Bitmap frame = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+    try {
+      painter.drawUncachedBackground(new Canvas(frame),
+          new Rect(0, 0, size, size),
+          palette,
+          calendar,
+          time,
+          location,
+          options
+      );
+      return count(frame);
+    } finally {
+      frame.recycle();
+    }
+  }
+
+  private static Report count(Bitmap frame) {
+    final int width = frame.getWidth();
+    final int height = frame.getHeight();
+    final float centreX = width / 2f;
+    final float centreY = height / 2f;
+    final float faceRadiusSquared = centreX * centreX;
+    final int[] row = new int[width];
+
+    long pixelWrites = 0;
+    long pixelsWritten = 0;
+    long pixelWritesOutsideFace = 0;
+    int maximumWritesPerPixel = 0;
+    for (int y = 0; y < height; y++) {
+      frame.getPixels(row, 0, width, 0, y, width, 1);
+      final float dy = y + 0.5f - centreY;
+      for (int x = 0; x < width; x++) {
+        final int writes = Color.alpha(row[x]);
+        if (writes == 0) {
+          continue;
+        }
+        pixelWrites += writes;
+        pixelsWritten++;
+        maximumWritesPerPixel = Math.max(maximumWritesPerPixel, writes);
+        final float dx = x + 0.5f - centreX;
+        if (dx * dx + dy * dy > faceRadiusSquared) {
+          pixelWritesOutsideFace += writes;
+        }
+      }
+    }
+    return new Report(pixelWrites, pixelsWritten, pixelWritesOutsideFace, maximumWritesPerPixel);
+  }
+}
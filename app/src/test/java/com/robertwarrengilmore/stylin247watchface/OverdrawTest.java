@@ -0,0 +1,80 @@
+package com.robertwarrengilmore.stylin247watchface;
+
+import android.content.Context;
+import android.location.Location;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+
+import java.time.Instant;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Reports how many pixel writes a background rebuild makes, and keeps them within bounds.
+ */
+@RunWith(RobolectricTestRunner.class)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+@Config(sdk = 30)
+public class OverdrawTest {
+
+  private static final int SIZE = 400;
+  private static final Instant WHEN = Instant.parse("2021-06-21T12:00:00Z");
+  private static final TimeZone TIME_ZONE = TimeZone.getTimeZone("Europe/London");
+  private static final Location LONDON = FrameRenderer.getLocation(51.5, -0.13);
+  /* Everything that can be drawn is drawn. */
+  private static final FaceOptions OPTIONS = FaceOptions
+      .builder()
+      .drawRealisticSun(true)
+      .showHourNumbers(true)
+      .showSingleMinuteTicks(true)
+      .build();
+
+  /* Only the anti-aliased rim of the face may spill into the corners of a round screen. */
+  private static final double MAXIMUM_FRACTION_OF_WRITES_OUTSIDE_FACE = 0.01;
+  /*
+   * Each region is written once. Only the ticks, the numbers, the sun and the moon, and the pixel
+   * of overlap between the ring and the hour disc, are written over it. The round face measured
+   * 1.06 writes per pixel.
+   */
+  private static final double MAXIMUM_WRITES_PER_PIXEL_WRITTEN = 1.1;
+
+  @Test
+  public void roundFaceStaysWithinBounds() {
+    final OverdrawCounter.Report round = measure(true);
+    final OverdrawCounter.Report square = measure(false);
+    System.out.println("Round face: " + round);
+    System.out.println("Square face: " + square);
+
+    assertTrue("The round face writes " + round.getPixelWritesOutsideFace() + " of " +
+            round.getPixelWrites() + " pixels outside the face.",
+        round.getPixelWritesOutsideFace() <=
+            MAXIMUM_FRACTION_OF_WRITES_OUTSIDE_FACE * round.getPixelWrites()
+    );
+    assertTrue("The round face writes each pixel " + round.getWritesPerPixelWritten() +
+            " times on average.",
+        round.getWritesPerPixelWritten() <= MAXIMUM_WRITES_PER_PIXEL_WRITTEN
+    );
+    assertTrue("The round face makes " + round.getPixelWrites() + " writes, not fewer than the " +
+            "square face's " + square.getPixelWrites() + ".",
+        round.getPixelWrites() < square.getPixelWrites()
+    );
+  }
+
+  private static OverdrawCounter.Report measure(boolean roundFace) {
+    final Context context = RuntimeEnvironment.getApplication();
+    return OverdrawCounter.measureBackground(context,
+        WHEN,
+        TIME_ZONE,
+        LONDON,
+        SIZE,
+        OPTIONS,
+        roundFace
+    );
+  }
+}
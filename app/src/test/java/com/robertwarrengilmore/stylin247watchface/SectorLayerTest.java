@@ -0,0 +1,109 @@
+package com.robertwarrengilmore.stylin247watchface;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.location.Location;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that bounding the sector masking layers to their sectors leaves the background exactly as
+ * it was with layers the size of the whole face.
+ */
+@RunWith(RobolectricTestRunner.class)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+@Config(sdk = 30)
+public class SectorLayerTest {
+
+  private static final int SIZE = 400;
+  private static final TimeZone TIME_ZONE = TimeZone.getTimeZone("Europe/London");
+  private static final Location LONDON = FrameRenderer.getLocation(51.5, -0.13);
+  /* Both sectors are drawn at these instants, with the sun and the moon in different places. */
+  private static final Instant[] INSTANTS = {
+      Instant.parse("2021-06-21T12:00:00Z"),
+      Instant.parse("2021-12-21T03:00:00Z"),
+  };
+
+  /**
+   * A canvas that ignores the bounds of every layer, as the painter did before they were bounded.
+   */
+  private static class FullLayerCanvas extends Canvas {
+
+    private FullLayerCanvas(Bitmap bitmap) {
+      super(bitmap);
+    }
+
+    @Override
+    public int saveLayer(RectF bounds, Paint paint) {
+      return super.saveLayer(null, paint);
+    }
+  }
+
+  @Test
+  public void boundedLayersMatchFullLayers() {
+    final Context context = RuntimeEnvironment.getApplication();
+    final FrameRenderer.PaletteFactory[] paletteFactories = {
+        Palette::getMutedPalette, Palette::getVividPalette, Palette::getAmbientPalette,
+    };
+    final FaceOptions options = FaceOptions
+        .builder()
+        .drawRealisticSun(true)
+        .showHourNumbers(true)
+        .showSingleMinuteTicks(true)
+        .build();
+    final List<String> mismatches = new ArrayList<>();
+    for (FrameRenderer.PaletteFactory paletteFactory : paletteFactories) {
+      final Palette palette = paletteFactory.create(context, SIZE / 2f);
+      for (Instant when : INSTANTS) {
+        for (boolean roundFace : new boolean[]{false, true}) {
+          final Bitmap bounded = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+          drawBackground(new Canvas(bounded), palette, when, options, roundFace);
+          final Bitmap full = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+          drawBackground(new FullLayerCanvas(full), palette, when, options, roundFace);
+          final int mismatchCount = BitmapComparison.countMismatches(full, bounded);
+          if (mismatchCount > 0) {
+            mismatches.add(palette.getSpriteKey() + " at " + when + ", round " + roundFace + ": " +
+                mismatchCount + " pixels differ");
+          }
+        }
+      }
+    }
+    assertTrue(String.join("\n", mismatches), mismatches.isEmpty());
+  }
+
+  private static void drawBackground(
+      Canvas canvas, Palette palette, Instant when, FaceOptions options, boolean roundFace
+  ) {
+    final Painter painter = new Painter(new CacheRegistry(Long.MAX_VALUE));
+    painter.setRoundFace(roundFace);
+    final Calendar calendar = Calendar.getInstance(TIME_ZONE);
+    calendar.setTimeInMillis(when.toEpochMilli());
+    final TimeSource.Time time = new TimeSource.Time();
+    new TimeSource(TIME_ZONE).getTime(when.toEpochMilli(), time);
+    painter.drawUncachedBackground(canvas,
+        new Rect(0, 0, SIZE, SIZE),
+        palette,
+        calendar,
+        time,
+        LONDON,
+        options
+    );
+  }
+}
@@ -0,0 +1,207 @@
+package com.robertwarrengilmore.stylin247watchface;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.location.Location;
+
+import androidx.annotation.Nullable;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import lombok.Value;
+
+/**
+ * Renders whole sequences of frames, e.g., every minute of a day or every day of a year, spread
+ * across the cores of a fork-join pool. This is for validating the painter and the astronomy
+ * calculations over many inputs, and for measuring rendering throughput.
+ * <p>
+ * {@link Painter} keeps mutable cache state, so every worker thread gets its own painter, palette,
+ * calendar, time source, bitmap and canvas. Every frame is drawn from scratch.
+ */
+class TimeLapseRenderer {
+
+  /**
+   * The number of consecutive frames that a worker renders without splitting the work further.
+   */
+  private static final int FRAMES_PER_TASK = 16;
+
+  /**
+   * Receives each frame as it's rendered. It's called on the worker threads, and the bitmap is
+   * reused for the worker's next frame, so it must be consumed (e.g., encoded) before returning.
+   */
+  interface FrameConsumer {
+
+    void accept(int index, Instant when, Bitmap frame);
+  }
+
+  @Value
+  static class Result {
+
+    int frameCount;
+    int parallelism;
+    long elapsedNanos;
+
+    double getFramesPerSecond() {
+      return frameCount / (elapsedNanos / 1e9);
+    }
+  }
+
+  private static class Worker {
+
+    private final Painter painter = new Painter(new CacheRegistry(Long.MAX_VALUE));
+    private final Calendar calendar;
+    private final TimeSource timeSource;
+    private final TimeSource.Time time = new TimeSource.Time();
+    private final Palette palette;
+    private final Bitmap frame;
+    private final Canvas canvas;
+
+    private Worker(
+        Context context, TimeZone timeZone, int size, FrameRenderer.PaletteFactory paletteFactory
+    ) {
+      calendar = Calendar.getInstance(timeZone);
+      timeSource = new TimeSource(timeZone);
+      palette = paletteFactory.create(context, size / 2f);
+      frame = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+      canvas = new Canvas(frame);
+    }
+  }
+
+  /**
+   * Lists every minute of the given local date, in the given zone.
+   */
+  static List<Instant> getEveryMinuteOfDay(LocalDate date, ZoneId zone) {
+    final Instant start = date.atStartOfDay(zone).toInstant();
+    final Instant end = date.plusDays(1).atStartOfDay(zone).toInstant();
+    final List<Instant> instants = new ArrayList<>();
+    for (Instant when = start; when.isBefore(end); when = when.plus(Duration.ofMinutes(1))) {
+      instants.add(when);
+    }
+    return instants;
+  }
+
+  /**
+   * Lists the given local time on every day of the given year, in the given zone.
+   */
+  static List<Instant> getEveryDayOfYear(int year, LocalTime time, ZoneId zone) {
+    final List<Instant> instants = new ArrayList<>();
+    for (LocalDate date = LocalDate.of(year, 1, 1); date.getYear() == year;
+        date = date.plusDays(1)) {
+      instants.add(date.atTime(time).atZone(zone).toInstant());
+    }
+    return instants;
+  }
+
+  /**
+   * Renders a frame for each of the given instants, using the given number of threads.
+   *
+   * @param consumer
+   *     receives each frame, or null if only the throughput is of interest
+   */
+  static Result render(
+      Context context,
+      List<Instant> instants,
+      TimeZone timeZone,
+      @Nullable Location location,
+      int size,
+      FrameRenderer.PaletteFactory paletteFactory,
+      FaceOptions options,
+      int parallelism,
+      @Nullable FrameConsumer consumer
+  ) {
+    final ThreadLocal<Worker> workers = ThreadLocal.withInitial(() -> new Worker(context,
+        timeZone,
+        size,
+        paletteFactory
+    ));
+    final ForkJoinPool pool = new ForkJoinPool(parallelism);
+    final long startNanos = System.nanoTime();
+    try {
+      pool.invoke(new RenderTask(instants,
+          0,
+          instants.size(),
+          workers,
+          location,
+          size,
+          options,
+          consumer
+      ));
+    } finally {
+      pool.shutdown();
+    }
+    return new Result(instants.size(), parallelism, System.nanoTime() - startNanos);
+  }
+
+  private static class RenderTask extends RecursiveAction {
+
+    private final List<Instant> instants;
+    private final int from;
+    private final int to;
+    private final ThreadLocal<Worker> workers;
+    private final Location location;
+    private final int size;
+    private final FaceOptions options;
+    private final FrameConsumer consumer;
+
+    private RenderTask(
+        List<Instant> instants,
+        int from,
+        int to,
+        ThreadLocal<Worker> workers,
+        @Nullable Location location,
+        int size,
+        FaceOptions options,
+        @Nullable FrameConsumer consumer
+    ) {
+      this.instants = instants;
+      this.from = from;
+      this.to = to;
+      this.workers = workers;
+      this.location = location;
+      this.size = size;
+      this.options = options;
+      this.consumer = consumer;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from > FRAMES_PER_TASK) {
+        final int middle = (from + to) >>> 1;
+        invokeAll(
+            new RenderTask(instants, from, middle, workers, location, size, options, consumer),
+            new RenderTask(instants, middle, to, workers, location, size, options, consumer)
+        );
+        return;
+      }
+      final Worker worker = workers.get();
+      for (int index = from; index < to; index++) {
+        final Instant when = instants.get(index);
+        FrameRenderer.draw(worker.painter,
+            worker.canvas,
+            size,
+            worker.palette,
+            when.toEpochMilli(),
+            worker.calendar,
+            worker.timeSource,
+            worker.time,
+            location,
+            options
+        );
+        if (consumer != null) {
+          consumer.accept(index, when, worker.frame);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,88 @@
+package com.robertwarrengilmore.stylin247watchface;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.location.Location;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that rendering a time lapse across several threads gives the same frames as rendering
+ * them one at a time, i.e., that the workers share no painter state.
+ */
+@RunWith(RobolectricTestRunner.class)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+@Config(sdk = 30)
+public class TimeLapseRendererTest {
+
+  private static final int SIZE = 200;
+  private static final int PARALLELISM = 4;
+  private static final ZoneId ZONE = ZoneId.of("Europe/London");
+  private static final Location LONDON = FrameRenderer.getLocation(51.5, -0.13);
+  private static final FaceOptions OPTIONS = FaceOptions.builder().showHourNumbers(true).build();
+
+  @Test
+  public void parallelFramesMatchSequentialFrames() {
+    final Context context = RuntimeEnvironment.getApplication();
+    final TimeZone timeZone = TimeZone.getTimeZone(ZONE);
+    // Every quarter of an hour of an equinox, so that the hands and the sectors all move.
+    final List<Instant> instants = new ArrayList<>();
+    final List<Instant> everyMinute = TimeLapseRenderer.getEveryMinuteOfDay(
+        LocalDate.of(2021, 3, 20),
+        ZONE
+    );
+    for (int index = 0; index < everyMinute.size(); index += 15) {
+      instants.add(everyMinute.get(index));
+    }
+
+    final ConcurrentLinkedQueue<String> mismatches = new ConcurrentLinkedQueue<>();
+    final TimeLapseRenderer.Result result = TimeLapseRenderer.render(context,
+        instants,
+        timeZone,
+        LONDON,
+        SIZE,
+        Palette::getMutedPalette,
+        OPTIONS,
+        PARALLELISM,
+        (index, when, frame) -> {
+          final Bitmap expected = FrameRenderer.render(context,
+              when,
+              timeZone,
+              LONDON,
+              SIZE,
+              Palette::getMutedPalette,
+              OPTIONS
+          );
+          final int mismatchCount = BitmapComparison.countMismatches(expected, frame);
+          if (mismatchCount > 0) {
+            mismatches.add(when + ": " + mismatchCount + " pixels differ");
+          }
+          expected.recycle();
+        }
+    );
+
+    System.out.printf("Rendered and checked %d frames on %d threads, %.1f per second.%n",
+        result.getFrameCount(),
+        result.getParallelism(),
+        result.getFramesPerSecond()
+    );
+    assertEquals(instants.size(), result.getFrameCount());
+    assertTrue(String.join("\n", mismatches), mismatches.isEmpty());
+  }
+}